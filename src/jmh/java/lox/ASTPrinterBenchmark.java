@@ -0,0 +1,54 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures ASTPrinter.print() over an already parsed expression
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ASTPrinterBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int size;
+
+    @Param({"0", "8", "64"})
+    public int depth;
+
+    @Param({"additive", "multiplicative", "comparison"})
+    public String operators;
+
+    @Param({"number", "string"})
+    public String literals;
+
+    private Expression expression;
+    private int nodeCount;
+    private ASTPrinter printer;
+
+    @Setup
+    public void setup() {
+        expression = new Parser(new Scanner(BenchmarkInputs.expression(size, depth, operators, literals)).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        printer = new ASTPrinter();
+    }
+
+    @Benchmark
+    public String print(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return printer.print(expression);
+    }
+}
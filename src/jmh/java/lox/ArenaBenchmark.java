@@ -0,0 +1,76 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares parsing into and evaluating a tree of Expression objects with the same for an ExpressionArena.
+// Run with -prof gc to compare how much each form allocates per node
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArenaBenchmark {
+
+    @Param({"256", "2048"})
+    public int size;
+
+    @Param({"0", "64"})
+    public int depth;
+
+    @Param({"additive", "comparison"})
+    public String operators;
+
+    private TokenBuffer tokens;
+    private Expression expression;
+    private ExpressionArena arena;
+    private int nodeCount;
+    private Interpreter interpreter;
+    private ArenaEvaluator evaluator;
+
+    @Setup
+    public void setup() {
+        tokens = new Scanner(BenchmarkInputs.expression(size, depth, operators, "number")).scanTokens();
+        expression = new PrattParser(tokens).parse();
+        arena = new PrattParser(tokens).parseArena();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        interpreter = new Interpreter();
+        evaluator = new ArenaEvaluator();
+    }
+
+    @Benchmark
+    public Expression parseTree(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return new PrattParser(tokens).parse();
+    }
+
+    @Benchmark
+    public ExpressionArena parseArena(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return new PrattParser(tokens).parseArena();
+    }
+
+    @Benchmark
+    public Object evaluateTree(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluate(expression);
+    }
+
+    @Benchmark
+    public Object evaluateArena(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return evaluator.evaluate(arena);
+    }
+}
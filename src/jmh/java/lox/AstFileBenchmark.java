@@ -0,0 +1,74 @@
+package lox;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares getting a tree by scanning and parsing UTF-8 source with loading it from a .loxc file's bytes,
+// either from a buffer (as a memory-mapped file would be) or from a stream
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AstFileBenchmark {
+
+    @Param({"256", "2048"})
+    public int size;
+
+    @Param({"0", "64"})
+    public int depth;
+
+    @Param({"number", "string"})
+    public String literals;
+
+    private ByteBuffer source;
+    private byte[] compiled;
+    private int nodeCount;
+
+    @Setup
+    public void setup() throws IOException {
+        String text = BenchmarkInputs.expression(size, depth, "additive", literals);
+        source = ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+
+        Expression expression = new PrattParser(new Scanner(text).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstFile.write(expression, out);
+        compiled = out.toByteArray();
+    }
+
+    @Benchmark
+    public Expression parse(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return new PrattParser(new Scanner(new Utf8Source(source)).scanTokens()).parse();
+    }
+
+    @Benchmark
+    public Expression loadBuffer(PhaseCounters.Nodes counters) throws IOException {
+        counters.nodes += nodeCount;
+        return AstFile.read(ByteBuffer.wrap(compiled));
+    }
+
+    @Benchmark
+    public Expression loadStream(PhaseCounters.Nodes counters) throws IOException {
+        counters.nodes += nodeCount;
+        return AstFile.read(new ByteArrayInputStream(compiled));
+    }
+}
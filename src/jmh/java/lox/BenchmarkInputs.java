@@ -0,0 +1,139 @@
+package lox;
+
+// Generates Lox expressions of a given shape for the benchmarks.
+// Every generated expression is well typed, so it can be evaluated as well as scanned and parsed.
+final class BenchmarkInputs {
+
+    private BenchmarkInputs() {
+    }
+
+    // Builds an expression with roughly "size" literal operands, nested "depth" groupings deep.
+    // "operators" is one of additive, multiplicative or comparison, and "literals" is number or string
+    static String expression(int size, int depth, String operators, String literals) {
+        StringBuilder builder = new StringBuilder();
+        chain(builder, Math.max(size, 1), Math.max(depth, 0), operators, literals.equals("string"), new int[1]);
+        return builder.toString();
+    }
+
+    // Builds identifier-heavy source for the scanner: "count" words, roughly one in "keywordEvery" of them
+    // a keyword and the rest identifiers, some of which start like keywords ("format", "thistle", "an").
+    // It's not a valid expression, so it can only be scanned
+    static String identifiers(int count, int keywordEvery) {
+        String[] keywords = {"and", "class", "else", "false", "for", "fun", "if", "nil",
+                "or", "print", "return", "super", "this", "true", "var", "while"};
+        String[] names = {"format", "thistle", "an", "variable", "x", "count_2", "whiles", "superb", "i", "nothing"};
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i % keywordEvery == 0) {
+                builder.append(keywords[(i / keywordEvery) % keywords.length]);
+            } else {
+                builder.append(names[i % names.length]);
+            }
+            builder.append(i % 8 == 7 ? '\n' : ' ');
+        }
+        return builder.toString();
+    }
+
+    // Builds a sum of "size" groups, each one of "distinct" different subexpressions of a dozen nodes, so with
+    // a small "distinct" most of the tree is copies of the same few groups. Nothing repeats if "distinct"
+    // is at least "size", apart from some literals
+    static String redundant(int size, int distinct) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(i % 8 == 0 ? "\n+ " : " + ");
+            }
+            int k = i % Math.max(distinct, 1);
+            builder.append("((").append(k).append(" * 2 + 1) * (").append(k).append(" - 3) / (")
+                    .append(k).append(" + 0.5))");
+        }
+        return builder.toString();
+    }
+
+    // Builds an expression that's two copies of the one a level down, "depth" levels deep, so the tree has
+    // about 2^depth copies of the innermost one but only "depth" different subexpressions
+    static String nested(int depth) {
+        String expression = "1 + 2 * 3";
+        for (int level = 0; level < depth; level++) {
+            expression = "(" + expression + ") * 0.5 + (" + expression + ") * 0.5";
+        }
+        return expression;
+    }
+
+    // Counts the nodes of a parsed expression, so benchmarks can report time per node
+    static int countNodes(Expression expression) {
+        return expression.accept(new Expression.Visitor<Integer>() {
+            @Override
+            public Integer visitBinaryExpression(Expression.Binary expression) {
+                return 1 + expression.left.accept(this) + expression.right.accept(this);
+            }
+
+            @Override
+            public Integer visitGroupingExpression(Expression.Grouping expression) {
+                return 1 + expression.expression.accept(this);
+            }
+
+            @Override
+            public Integer visitLiteralExpression(Expression.Literal expression) {
+                return 1;
+            }
+
+            @Override
+            public Integer visitUnaryExpression(Expression.Unary expression) {
+                return 1 + expression.right.accept(this);
+            }
+        });
+    }
+
+    // Writes a chain of operands joined by operators. The first operand holds the next nesting level,
+    // so the operands are spread evenly over every level and each group stays well typed
+    private static void chain(StringBuilder builder, int size, int depth, String operators, boolean strings, int[] counter) {
+        int nested = depth > 0 ? size - size / (depth + 1) : 0;
+        int flat = size - nested;
+
+        for (int i = 0; i < flat + (nested > 0 ? 1 : 0); i++) {
+            if (i > 0) {
+                builder.append(' ').append(operator(operators, strings, i)).append(' ');
+            }
+
+            if (i == 0 && nested > 0) {
+                builder.append('(');
+                chain(builder, nested, depth - 1, operators, strings, counter);
+                builder.append(')');
+            } else {
+                literal(builder, strings, counter[0]++);
+            }
+        }
+    }
+
+    // Picks the operator that joins operand i to the ones before it
+    private static String operator(String operators, boolean strings, int i) {
+        switch (operators) {
+            case "additive":
+                return strings || i % 2 == 1 ? "+" : "-";
+            case "multiplicative":
+                return strings ? "+" : (i % 2 == 1 ? "*" : "/");
+            case "comparison":
+                // Reads as "a == b + c < d + e != f + g < h + i ...", so the first operand
+                // (which may be a nested comparison) is only ever compared for equality
+                switch (i % 4) {
+                    case 1: return i % 8 == 1 ? "==" : "!=";
+                    case 3: return strings ? "==" : "<";
+                    default: return "+";
+                }
+            default:
+                throw new IllegalArgumentException("Unknown operator mix: " + operators);
+        }
+    }
+
+    private static void literal(StringBuilder builder, boolean strings, int index) {
+        if (strings) {
+            builder.append("\"s").append(index).append('"');
+        } else if (index % 3 == 0) {
+            builder.append(index % 100).append(".5");
+        } else {
+            builder.append(index % 100 + 1);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares walking a tree with accept() and a Visitor against switching on each node's kind, as the
+// Interpreter and ASTPrinter do through ExpressionSwitch. The accept() side is kept here as a copy of
+// how they used to work. evaluateUnboxed is what interpret() runs for every script. With visitors=all, every other visitor in the interpreter runs over the tree
+// first, so the call sites inside accept() have seen as many receivers as they would in a real run
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+
+    // How many times each other visitor walks the tree before measuring, enough for its calls to be profiled
+    private static final int POLLUTE_ROUNDS = 2000;
+
+    @Param({"256", "2048"})
+    public int size;
+
+    @Param({"0", "64"})
+    public int depth;
+
+    @Param({"additive", "comparison"})
+    public String operators;
+
+    @Param({"one", "all"})
+    public String visitors;
+
+    private Expression expression;
+    private int nodeCount;
+    private Interpreter interpreter;
+    private ASTPrinter printer;
+    private AcceptInterpreter acceptInterpreter;
+    private AcceptPrinter acceptPrinter;
+
+    @Setup
+    public void setup() {
+        expression = new Parser(new Scanner(BenchmarkInputs.expression(size, depth, operators, "number")).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        interpreter = new Interpreter();
+        printer = new ASTPrinter();
+        acceptInterpreter = new AcceptInterpreter();
+        acceptPrinter = new AcceptPrinter();
+
+        if (visitors.equals("all")) {
+            UnboxedEvaluator unboxed = new UnboxedEvaluator();
+            for (int i = 0; i < POLLUTE_ROUNDS; i++) {
+                acceptInterpreter.evaluate(expression);
+                acceptPrinter.print(expression);
+                unboxed.evaluate(expression);
+                new Optimizer().optimize(expression);
+                new Compiler().compile(expression);
+                Node.build(expression);
+            }
+        }
+    }
+
+    @Benchmark
+    public Object evaluateAccept(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return acceptInterpreter.evaluate(expression);
+    }
+
+    @Benchmark
+    public Object evaluateSwitch(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluate(expression);
+    }
+
+    @Benchmark
+    public Object evaluateUnboxed(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluateUnboxed(expression);
+    }
+
+    @Benchmark
+    public String printAccept(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return acceptPrinter.print(expression);
+    }
+
+    @Benchmark
+    public String printSwitch(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return printer.print(expression);
+    }
+
+    // The Interpreter's visit methods, recursing through accept()
+    private static class AcceptInterpreter implements Expression.Visitor<Object> {
+        Object evaluate(Expression expression) {
+            return Rope.flatten(expression.accept(this));
+        }
+
+        @Override
+        public Object visitBinaryExpression(Expression.Binary expression) {
+            Object left = expression.left.accept(this);
+            Object right = expression.right.accept(this);
+            return Interpreter.binary(expression.operator, left, right);
+        }
+
+        @Override
+        public Object visitGroupingExpression(Expression.Grouping expression) {
+            return expression.expression.accept(this);
+        }
+
+        @Override
+        public Object visitLiteralExpression(Expression.Literal expression) {
+            return expression.value;
+        }
+
+        @Override
+        public Object visitUnaryExpression(Expression.Unary expression) {
+            return Interpreter.unary(expression.operator, expression.right.accept(this));
+        }
+    }
+
+    // The ASTPrinter's visit methods, recursing through accept()
+    private static class AcceptPrinter implements Expression.Visitor<String> {
+        String print(Expression expression) {
+            return expression.accept(this);
+        }
+
+        @Override
+        public String visitBinaryExpression(Expression.Binary expression) {
+            return parenthesize(expression.operator.lexeme, expression.left, expression.right);
+        }
+
+        @Override
+        public String visitGroupingExpression(Expression.Grouping expression) {
+            return parenthesize("group", expression.expression);
+        }
+
+        @Override
+        public String visitLiteralExpression(Expression.Literal expression) {
+            if (expression.value == null) {
+                return "nil";
+            }
+            return expression.value.toString();
+        }
+
+        @Override
+        public String visitUnaryExpression(Expression.Unary expression) {
+            return parenthesize(expression.operator.lexeme, expression.right);
+        }
+
+        private String parenthesize(String name, Expression... expressions) {
+            StringBuilder builder = new StringBuilder();
+            builder.append("(").append(name);
+            for (Expression expression : expressions) {
+                builder.append(" ");
+                builder.append(expression.accept(this));
+            }
+            builder.append(")");
+            return builder.toString();
+        }
+    }
+}
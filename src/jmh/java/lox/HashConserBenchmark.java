@@ -0,0 +1,75 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares evaluating a tree with the Interpreter against evaluating its shared DAG with DagEvaluator,
+// plus what the HashConser pass costs, on input with no repeats, with a few groups repeated many times,
+// and with every level two copies of the one below. Nodes are counted in the tree, before sharing
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HashConserBenchmark {
+
+    // distinct: 1024 different groups, repeated: 1024 groups of 8 kinds, nested: 10 levels of doubling
+    @Param({"distinct", "repeated", "nested"})
+    public String input;
+
+    private Expression tree;
+    private int nodeCount;
+    private Interpreter interpreter;
+    private DagEvaluator evaluator;
+
+    @Setup
+    public void setup() {
+        String source;
+        switch (input) {
+            case "distinct": source = BenchmarkInputs.redundant(1024, 1024); break;
+            case "repeated": source = BenchmarkInputs.redundant(1024, 8); break;
+            case "nested": source = BenchmarkInputs.nested(10); break;
+            default: throw new IllegalArgumentException("Unknown input " + input + ".");
+        }
+
+        tree = new PrattParser(new Scanner(source).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(tree);
+        interpreter = new Interpreter();
+        evaluator = new DagEvaluator(new HashConser().share(tree));
+
+        Object expected = interpreter.evaluate(tree);
+        if (!expected.equals(evaluator.evaluate())) {
+            throw new IllegalStateException("The shared DAG evaluated to something other than the tree.");
+        }
+    }
+
+    @Benchmark
+    public Object tree(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluate(tree);
+    }
+
+    @Benchmark
+    public Object dag(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return evaluator.evaluate();
+    }
+
+    @Benchmark
+    public Expression share(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return new HashConser().share(tree);
+    }
+}
@@ -0,0 +1,48 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures scanning identifiers and keywords, the path that used to allocate a String per word.
+// With -prof gc, the only allocation left should be the TokenBuffer's own arrays
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IdentifierScannerBenchmark {
+
+    @Param({"256", "4096"})
+    public int size;
+
+    // One word in this many is a keyword
+    @Param({"1", "4", "1000000"})
+    public int keywordEvery;
+
+    private String source;
+    private int tokenCount;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkInputs.identifiers(size, keywordEvery);
+        tokenCount = new Scanner(source).scanTokens().size();
+    }
+
+    @Benchmark
+    public TokenBuffer scanTokens(PhaseCounters.Tokens counters) {
+        counters.tokens += tokenCount;
+        return new Scanner(source).scanTokens();
+    }
+}
@@ -0,0 +1,66 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares scanning and parsing a whole buffer again after a keystroke with IncrementalParser.edit().
+// Each edit overwrites one digit in the middle of the source, alternating between two values, and
+// "lines" adds one that types and deletes a line break there instead, which moves every token after it
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IncrementalParserBenchmark {
+
+    @Param({"256", "4096"})
+    public int size;
+
+    @Param({"0", "8"})
+    public int depth;
+
+    private String source;
+    private IncrementalParser parser;
+    private int digit;
+    private int edits = 0;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkInputs.expression(size, depth, "additive", "number");
+        digit = source.length() / 2;
+        while (!Character.isDigit(source.charAt(digit))) {
+            digit++;
+        }
+        parser = new IncrementalParser(source, new ErrorReporter(System.err));
+    }
+
+    @Benchmark
+    public Expression reparse() {
+        return new PrattParser(new Scanner(source).scanTokens()).parse();
+    }
+
+    @Benchmark
+    public Expression editDigit() {
+        return parser.edit(digit, 1, (edits++ & 1) == 0 ? "7" : "3");
+    }
+
+    @Benchmark
+    public Expression editLines() {
+        if ((edits++ & 1) == 0) {
+            return parser.edit(digit, 0, "\n");
+        }
+        return parser.edit(digit, 1, "");
+    }
+}
@@ -0,0 +1,76 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares evaluating the same expression over and over with the fastest Interpreter path, the VM,
+// and a class generated by JvmCompiler, plus what generating and loading that class costs
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JvmCompilerBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int size;
+
+    @Param({"additive", "comparison"})
+    public String operators;
+
+    private Expression expression;
+    private int nodeCount;
+    private Interpreter interpreter;
+    private VM vm;
+    private Chunk chunk;
+    private CompiledExpression compiled;
+
+    @Setup
+    public void setup() {
+        expression = new Parser(new Scanner(BenchmarkInputs.expression(size, 8, operators, "number")).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        interpreter = new Interpreter();
+        vm = new VM();
+        chunk = new Compiler().compile(expression);
+        compiled = JvmCompiler.tryCompile(expression);
+        if (compiled == null) {
+            throw new IllegalStateException("Benchmark expression didn't compile to a class.");
+        }
+    }
+
+    @Benchmark
+    public Object unboxed(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluateUnboxed(expression);
+    }
+
+    @Benchmark
+    public Object bytecode(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return vm.run(chunk);
+    }
+
+    @Benchmark
+    public Object compiled(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return compiled.evaluate();
+    }
+
+    @Benchmark
+    public CompiledExpression compile(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return JvmCompiler.tryCompile(expression);
+    }
+}
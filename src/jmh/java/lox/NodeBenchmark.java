@@ -0,0 +1,73 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares the Interpreter with a tree of Nodes that has already specialized itself,
+// and with building and specializing a fresh tree for every evaluation
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NodeBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int size;
+
+    @Param({"additive", "comparison"})
+    public String operators;
+
+    @Param({"number", "string"})
+    public String literals;
+
+    private Expression expression;
+    private int nodeCount;
+    private Interpreter interpreter;
+    private Node.Root tree;
+
+    @Setup
+    public void setup() {
+        expression = new Parser(new Scanner(BenchmarkInputs.expression(size, 8, operators, literals)).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        interpreter = new Interpreter();
+        tree = Node.build(expression);
+        tree.evaluate();
+    }
+
+    @Benchmark
+    public Object boxed(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluate(expression);
+    }
+
+    @Benchmark
+    public Object unboxed(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluateUnboxed(expression);
+    }
+
+    @Benchmark
+    public Object specialized(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return tree.evaluate();
+    }
+
+    @Benchmark
+    public Object buildAndEvaluate(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return Node.build(expression).evaluate();
+    }
+}
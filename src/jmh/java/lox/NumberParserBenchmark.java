@@ -0,0 +1,112 @@
+package lox;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares NumberParser with copying each literal into a String for Double.parseDouble, the way the Scanner
+// used to, over 1024 literals of one shape. NumberParserTest checks that both read every literal the same
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NumberParserBenchmark {
+    private static final int LITERALS = 1024;
+
+    // integer: "12345", short: "3.25", long: 17 significant digits, tiny: "0.000...0123",
+    // huge: more digits than fit in a long
+    @Param({"integer", "short", "long", "tiny", "huge"})
+    public String shape;
+
+    private String source;
+    private int[] starts;
+    private int[] ends;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(23);
+        StringBuilder builder = new StringBuilder();
+        starts = new int[LITERALS];
+        ends = new int[LITERALS];
+        for (int i = 0; i < LITERALS; i++) {
+            String literal = literal(random, shape);
+            starts[i] = builder.length();
+            builder.append(literal);
+            ends[i] = builder.length();
+            builder.append(' ');
+        }
+        source = builder.toString();
+    }
+
+    @Benchmark
+    public double numberParser(PhaseCounters.Tokens counters) {
+        counters.tokens += LITERALS;
+        double sum = 0;
+        for (int i = 0; i < LITERALS; i++) {
+            sum += NumberParser.parse(source, starts[i], ends[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double parseDouble(PhaseCounters.Tokens counters) {
+        counters.tokens += LITERALS;
+        double sum = 0;
+        for (int i = 0; i < LITERALS; i++) {
+            sum += Double.parseDouble(source.substring(starts[i], ends[i]));
+        }
+        return sum;
+    }
+
+    private static String literal(Random random, String shape) {
+        StringBuilder builder = new StringBuilder();
+        switch (shape) {
+            case "integer":
+                builder.append(random.nextInt(1_000_000));
+                break;
+            case "short":
+                builder.append(random.nextInt(1000)).append('.').append(random.nextInt(100));
+                break;
+            case "long":
+                int whole = 1 + random.nextInt(5);
+                digits(builder, random, whole);
+                builder.append('.');
+                digits(builder, random, 17 - whole);
+                break;
+            case "tiny":
+                builder.append("0.");
+                for (int zeros = random.nextInt(320); zeros > 0; zeros--) {
+                    builder.append('0');
+                }
+                digits(builder, random, 1 + random.nextInt(19));
+                break;
+            case "huge":
+                digits(builder, random, 20 + random.nextInt(20));
+                builder.append('.');
+                digits(builder, random, 1 + random.nextInt(20));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown literal shape " + shape + ".");
+        }
+        return builder.toString();
+    }
+
+    private static void digits(StringBuilder builder, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append((char)('0' + random.nextInt(10)));
+        }
+    }
+}
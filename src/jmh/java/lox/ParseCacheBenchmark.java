@@ -0,0 +1,49 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares scanning and parsing source from scratch with finding its tree in a warm ParseCache,
+// which still has to digest the whole source to look it up
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParseCacheBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int size;
+
+    private String source;
+    private ParseCache cache;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkInputs.expression(size, 0, "additive", "number");
+        cache = new ParseCache(16, Long.MAX_VALUE);
+        cache.put(ParseCache.key(source, false), new ParseCache.Entry(parse(), 0));
+    }
+
+    @Benchmark
+    public Expression parse() {
+        return new PrattParser(new Scanner(source).scanTokens()).parse();
+    }
+
+    @Benchmark
+    public Expression cached() {
+        return cache.get(ParseCache.key(source, false)).expression;
+    }
+}
@@ -0,0 +1,53 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures Parser.parse() over pre-scanned tokens
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int size;
+
+    @Param({"0", "8", "64"})
+    public int depth;
+
+    @Param({"additive", "multiplicative", "comparison"})
+    public String operators;
+
+    @Param({"number", "string"})
+    public String literals;
+
+    private TokenBuffer tokens;
+    private int nodeCount;
+
+    @Setup
+    public void setup() {
+        tokens = new Scanner(BenchmarkInputs.expression(size, depth, operators, literals)).scanTokens();
+        nodeCount = BenchmarkInputs.countNodes(new Parser(tokens).parse());
+    }
+
+    @Benchmark
+    public Expression parse(PhaseCounters.Tokens tokenCounter, PhaseCounters.Nodes nodeCounter) {
+        tokenCounter.tokens += tokens.size();
+        nodeCounter.nodes += nodeCount;
+        return new Parser(tokens).parse();
+    }
+}
@@ -0,0 +1,54 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares the recursive descent Parser with the PrattParser, on long flat chains (depth 0)
+// and on deeply nested groupings
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PrattParserBenchmark {
+
+    @Param({"256", "2048"})
+    public int size;
+
+    @Param({"0", "64", "256"})
+    public int depth;
+
+    @Param({"additive", "comparison"})
+    public String operators;
+
+    private TokenBuffer tokens;
+
+    @Setup
+    public void setup() {
+        tokens = new Scanner(BenchmarkInputs.expression(size, depth, operators, "number")).scanTokens();
+    }
+
+    @Benchmark
+    public Expression recursiveDescent(PhaseCounters.Tokens counters) {
+        counters.tokens += tokens.size();
+        return new Parser(tokens).parse();
+    }
+
+    @Benchmark
+    public Expression pratt(PhaseCounters.Tokens counters) {
+        counters.tokens += tokens.size();
+        return new PrattParser(tokens).parse();
+    }
+}
@@ -0,0 +1,56 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Evaluates long chains of string concatenations. The Interpreter builds Ropes, so its time per node
+// should stay flat as chains get longer, while the VM, which still copies on every "+", grows with the length
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RopeBenchmark {
+
+    @Param({"256", "512", "1024", "2048"})
+    public int size;
+
+    private Expression expression;
+    private int nodeCount;
+    private Interpreter interpreter;
+    private VM vm;
+    private Chunk chunk;
+
+    @Setup
+    public void setup() {
+        expression = new Parser(new Scanner(BenchmarkInputs.expression(size, 0, "additive", "string")).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        interpreter = new Interpreter();
+        vm = new VM();
+        chunk = new Compiler().compile(expression);
+    }
+
+    @Benchmark
+    public Object ropes(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluateUnboxed(expression);
+    }
+
+    @Benchmark
+    public Object copying(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return vm.run(chunk);
+    }
+}
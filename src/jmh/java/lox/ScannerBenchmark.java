@@ -0,0 +1,65 @@
+package lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Measures Scanner.scanTokens() over generated sources
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ScannerBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int size;
+
+    @Param({"0", "8", "64"})
+    public int depth;
+
+    @Param({"additive", "multiplicative", "comparison"})
+    public String operators;
+
+    @Param({"number", "string"})
+    public String literals;
+
+    private String source;
+    // The same source as UTF-8 bytes outside the heap, the way Lox.runFile sees a memory-mapped file
+    private ByteBuffer bytes;
+    private int tokenCount;
+
+    @Setup
+    public void setup() {
+        source = BenchmarkInputs.expression(size, depth, operators, literals);
+        byte[] encoded = source.getBytes(StandardCharsets.UTF_8);
+        bytes = ByteBuffer.allocateDirect(encoded.length);
+        bytes.put(encoded).flip();
+        tokenCount = new Scanner(source).scanTokens().size();
+    }
+
+    @Benchmark
+    public TokenBuffer scanTokens(PhaseCounters.Tokens counters) {
+        counters.tokens += tokenCount;
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public TokenBuffer scanUtf8Bytes(PhaseCounters.Tokens counters) {
+        counters.tokens += tokenCount;
+        return new Scanner(new Utf8Source(bytes)).scanTokens();
+    }
+}
@@ -0,0 +1,65 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares boxed and unboxed evaluation of all-numeric expressions. With -prof gc,
+// "primitive" should show an allocation rate of zero bytes per operation
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UnboxedBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int size;
+
+    @Param({"0", "8", "64"})
+    public int depth;
+
+    @Param({"additive", "multiplicative"})
+    public String operators;
+
+    private Expression expression;
+    private int nodeCount;
+    private Interpreter interpreter;
+
+    @Setup
+    public void setup() {
+        expression = new Parser(new Scanner(BenchmarkInputs.expression(size, depth, operators, "number")).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        interpreter = new Interpreter();
+    }
+
+    @Benchmark
+    public Object boxed(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluate(expression);
+    }
+
+    // Boxes the final value only
+    @Benchmark
+    public Object unboxed(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluateUnboxed(expression);
+    }
+
+    @Benchmark
+    public double primitive(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluateDouble(expression);
+    }
+}
@@ -0,0 +1,71 @@
+package lox;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Compares repeated evaluation of the same expression by the tree-walking Interpreter and by the VM
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VMBenchmark {
+
+    @Param({"16", "256", "2048"})
+    public int size;
+
+    @Param({"0", "8", "64"})
+    public int depth;
+
+    @Param({"additive", "multiplicative", "comparison"})
+    public String operators;
+
+    @Param({"number", "string"})
+    public String literals;
+
+    private Expression expression;
+    private int nodeCount;
+    private Interpreter interpreter;
+    private Chunk chunk;
+    private VM vm;
+
+    @Setup
+    public void setup() {
+        expression = new Parser(new Scanner(BenchmarkInputs.expression(size, depth, operators, literals)).scanTokens()).parse();
+        nodeCount = BenchmarkInputs.countNodes(expression);
+        interpreter = new Interpreter();
+        chunk = new Compiler().compile(expression);
+        vm = new VM();
+    }
+
+    @Benchmark
+    public Object treeWalking(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return interpreter.evaluate(expression);
+    }
+
+    @Benchmark
+    public Object bytecode(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return vm.run(chunk);
+    }
+
+    // Includes the cost of compiling, for expressions that are only evaluated once
+    @Benchmark
+    public Object compileAndRun(PhaseCounters.Nodes counters) {
+        counters.nodes += nodeCount;
+        return vm.run(new Compiler().compile(expression));
+    }
+}
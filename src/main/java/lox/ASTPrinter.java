@@ -1,8 +1,9 @@
 package lox;
 
-class ASTPrinter implements Expression.Visitor<String> {
+// Like the Interpreter, dispatches on each node's kind instead of calling accept()
+class ASTPrinter extends ExpressionSwitch<String> {
     String print(Expression expression) {
-        return expression.accept(this);
+        return dispatch(expression);
     }
 
     @Override
@@ -35,7 +36,7 @@ class ASTPrinter implements Expression.Visitor<String> {
 
         for (Expression expression : expressions) {
             builder.append(" ");
-            builder.append(expression.accept(this));
+            builder.append(dispatch(expression));
         }
 
         builder.append(")");
@@ -0,0 +1,83 @@
+package lox;
+
+import java.util.Arrays;
+
+// Evaluates an ExpressionArena in a single pass over its nodes, from first to last, instead of walking it as a tree.
+// That works because the arena is in postfix order, as PrattParser.parseArena() builds it: a node's operands are
+// always the values pushed most recently, and once the root has run its value is the only one left.
+// Reuses its stack between evaluations and so must only be used by one thread at a time
+class ArenaEvaluator {
+    private Object[] stack = new Object[16];
+
+    // Returns the same value Interpreter.evaluate() would for the tree the arena encodes
+    Object evaluate(ExpressionArena arena) {
+        Object[] stack = this.stack;
+        int top = 0;
+
+        try {
+            int end = arena.end();
+            for (int node = 0; node < end; node = arena.next(node)) {
+                switch (arena.kind(node)) {
+                    case ExpressionArena.LITERAL:
+                        if (top == stack.length) {
+                            stack = this.stack = Arrays.copyOf(stack, top * 2);
+                        }
+                        stack[top++] = arena.literalValue(node);
+                        break;
+                    case ExpressionArena.GROUPING:
+                        // The value of the expression inside is already on top
+                        break;
+                    case ExpressionArena.UNARY:
+                        stack[top - 1] = Interpreter.unary(arena.unaryOperator(node), stack[top - 1]);
+                        break;
+                    case ExpressionArena.BINARY:
+                        top--;
+                        stack[top - 1] = Interpreter.binary(arena.binaryOperator(node), stack[top - 1], stack[top]);
+                        break;
+                }
+            }
+            return Rope.flatten(stack[0]);
+        } finally {
+            // A binary operator that failed has already popped its right operand, so clear one past the top too
+            Arrays.fill(stack, 0, Math.min(top + 1, stack.length), null);
+        }
+    }
+
+    // Builds the arena for a tree that was parsed somewhere else, like one loaded from a .loxc file, in the
+    // postfix order evaluate() needs
+    static ExpressionArena flatten(Expression expression) {
+        ExpressionArena arena = new ExpressionArena();
+        new Flattener(arena).dispatch(expression);
+        return arena;
+    }
+
+    // Adds every node's operands to the arena before the node itself. Each visit returns the node it added
+    private static class Flattener extends ExpressionSwitch<Integer> {
+        private final ExpressionArena arena;
+
+        Flattener(ExpressionArena arena) {
+            this.arena = arena;
+        }
+
+        @Override
+        public Integer visitBinaryExpression(Expression.Binary expression) {
+            int left = dispatch(expression.left);
+            return arena.binary(left, expression.operator, dispatch(expression.right));
+        }
+
+        @Override
+        public Integer visitGroupingExpression(Expression.Grouping expression) {
+            return arena.grouping(dispatch(expression.expression));
+        }
+
+        @Override
+        public Integer visitLiteralExpression(Expression.Literal expression) {
+            return arena.literal(expression.value);
+        }
+
+        @Override
+        public Integer visitUnaryExpression(Expression.Unary expression) {
+            return arena.unary(expression.operator, dispatch(expression.right));
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package lox;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads and writes parsed Expression trees as .loxc files, so a script only has to be scanned and parsed once.
+// A file is laid out as:
+//
+//   "LOXC"            magic number
+//   version           varint, must equal VERSION
+//   constant count    varint
+//   constants         a tag byte, then 8 big-endian bytes for a number, or a varint length and UTF-8 bytes for a string
+//   tree              the nodes in prefix order, each starting with a varint tag
+//
+// Literal numbers and strings are stored once in the constant pool and referred to by index. Unary and binary
+// nodes have one tag per operator, so most nodes take a single byte. Runtime errors need the line of the
+// operator that failed, so before an operator on a different line than the one before it (starting from
+// line 1) comes a LINE tag with the difference. Every other part of a Token can be rebuilt from its type
+class AstFile {
+    // Bump whenever the layout or the tags change, so old files are rejected
+    static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'L', 'O', 'X', 'C'};
+
+    // Node tags
+    private static final int NIL = 0;
+    private static final int TRUE = 1;
+    private static final int FALSE = 2;
+    private static final int CONSTANT = 3;
+    private static final int GROUPING = 4;
+    private static final int LINE = 5;
+
+    // The operators, in tag order: a unary node's tag is UNARY + the index of its operator here,
+    // and a binary node's is BINARY + the index
+    private static final TokenType[] OPERATORS = {
+            TokenType.MINUS, TokenType.BANG, TokenType.PLUS, TokenType.SLASH, TokenType.STAR,
+            TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL,
+            TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL
+    };
+    private static final int UNARY = 6;
+    private static final int BINARY = UNARY + OPERATORS.length;
+    private static final int TAGS = BINARY + OPERATORS.length;
+
+    // Constant tags
+    private static final int NUMBER = 0;
+    private static final int STRING = 1;
+
+
+    // A .loxc file that can't be loaded: not one at all, written by a different version, or damaged
+    static class FormatException extends IOException {
+        FormatException(String message) {
+            super(message);
+        }
+    }
+
+    private AstFile() {
+    }
+
+    // Where "lox --compile" writes a script's tree: next to it, with .loxc in place of .lox
+    static Path compiledPath(Path script) {
+        String name = script.getFileName().toString();
+        if (name.endsWith(".lox")) {
+            name = name.substring(0, name.length() - ".lox".length());
+        }
+        return script.resolveSibling(name + ".loxc");
+    }
+
+    static void write(Expression expression, Path path) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            write(expression, out);
+        }
+    }
+
+    static void write(Expression expression, OutputStream out) throws IOException {
+        // The constant pool comes first but is only known once the tree has been walked,
+        // so the tree is encoded into a buffer before either is written
+        Writer writer = new Writer();
+        expression.accept(writer);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        header.write(MAGIC, 0, MAGIC.length);
+        writeVarint(header, VERSION);
+        writeVarint(header, writer.constants.size());
+        for (Object constant : writer.constants) {
+            if (constant instanceof Double) {
+                header.write(NUMBER);
+                long bits = Double.doubleToRawLongBits((Double)constant);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    header.write((int)(bits >>> shift));
+                }
+            } else {
+                byte[] text = ((String)constant).getBytes(StandardCharsets.UTF_8);
+                header.write(STRING);
+                writeVarint(header, text.length);
+                header.write(text, 0, text.length);
+            }
+        }
+
+        header.writeTo(out);
+        writer.tree.writeTo(out);
+    }
+
+    // Loads a tree by memory-mapping its file
+    static Expression read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new FormatException(path + " is too large to load (over 2GB).");
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(bytes);
+        }
+    }
+
+    static Expression read(ByteBuffer bytes) throws IOException {
+        return new Reader(bytes.duplicate(), null).read();
+    }
+
+    // Loads a tree as it streams in, without needing the whole file in memory first
+    static Expression read(InputStream in) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(8192);
+        chunk.limit(0);
+        return new Reader(chunk, in).read();
+    }
+
+    // Encodes the tree into a buffer, collecting the constant pool along the way
+    private static class Writer implements Expression.Visitor<Void> {
+        final List<Object> constants = new ArrayList<>();
+        // Doubles are keyed by their bits, so 0 and -0 stay different constants
+        private final Map<Object, Integer> indexes = new HashMap<>();
+        final ByteArrayOutputStream tree = new ByteArrayOutputStream();
+        private int line = 1;
+
+        @Override
+        public Void visitBinaryExpression(Expression.Binary expression) {
+            operator(BINARY, expression.operator);
+            expression.left.accept(this);
+            expression.right.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpression(Expression.Grouping expression) {
+            writeVarint(tree, GROUPING);
+            expression.expression.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpression(Expression.Literal expression) {
+            Object value = expression.value;
+            if (value == null) {
+                writeVarint(tree, NIL);
+            } else if (value instanceof Boolean) {
+                writeVarint(tree, (Boolean)value ? TRUE : FALSE);
+            } else {
+                writeVarint(tree, CONSTANT);
+                writeVarint(tree, constant(value));
+            }
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpression(Expression.Unary expression) {
+            operator(UNARY, expression.operator);
+            expression.right.accept(this);
+            return null;
+        }
+
+        private void operator(int base, Token operator) {
+            if (operator.line != line) {
+                // Zigzag encoding, so small steps back up are as short as small steps down
+                int delta = operator.line - line;
+                writeVarint(tree, LINE);
+                writeVarint(tree, (delta << 1) ^ (delta >> 31));
+                line = operator.line;
+            }
+
+            for (int i = 0; i < OPERATORS.length; i++) {
+                if (OPERATORS[i] == operator.type) {
+                    writeVarint(tree, base + i);
+                    return;
+                }
+            }
+            throw new IllegalArgumentException("Can't write operator " + operator.type + ".");
+        }
+
+        private int constant(Object value) {
+            Object key = value instanceof Double ? (Object)Double.doubleToRawLongBits((Double)value) : value;
+            Integer index = indexes.get(key);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                indexes.put(key, index);
+            }
+            return index;
+        }
+    }
+
+    // Rebuilds a tree from a buffer. When reading a stream, the buffer is a chunk of it that is refilled
+    // whenever it runs out, rather than a whole file
+    private static class Reader {
+        private final ByteBuffer buffer;
+        private final InputStream stream;
+        private Object[] constants;
+        private int line = 1;
+
+        Reader(ByteBuffer buffer, InputStream stream) {
+            this.buffer = buffer;
+            this.stream = stream;
+        }
+
+        Expression read() throws IOException {
+            for (byte expected : MAGIC) {
+                if (readByte() != expected) {
+                    throw new FormatException("Not a compiled Lox file.");
+                }
+            }
+            int version = readVarint();
+            if (version != VERSION) {
+                throw new FormatException("Compiled file has version " + version + ", but this jlox reads version "
+                        + VERSION + ". Compile the script again.");
+            }
+
+            constants = new Object[readLength()];
+            for (int i = 0; i < constants.length; i++) {
+                constants[i] = readConstant();
+            }
+
+            Expression root = readNode();
+            if (!atEnd()) {
+                throw new FormatException("Compiled file has data after the tree.");
+            }
+            return root;
+        }
+
+        private Object readConstant() throws IOException {
+            int tag = readByte();
+            if (tag == NUMBER) {
+                long bits = 0;
+                for (int i = 0; i < 8; i++) {
+                    bits = bits << 8 | (readByte() & 0xFF);
+                }
+                return Double.longBitsToDouble(bits);
+            }
+            if (tag == STRING) {
+                byte[] text = new byte[readLength()];
+                for (int i = 0; i < text.length; i++) {
+                    text[i] = readByte();
+                }
+                return new String(text, StandardCharsets.UTF_8);
+            }
+            throw new FormatException("Unknown constant tag " + tag + ".");
+        }
+
+        private Expression readNode() throws IOException {
+            int tag = readVarint();
+            while (tag == LINE) {
+                int zigzag = readVarint();
+                line += (zigzag >>> 1) ^ -(zigzag & 1);
+                tag = readVarint();
+            }
+
+            if (tag >= UNARY && tag < BINARY) {
+                Token operator = operator(tag - UNARY);
+                return new Expression.Unary(operator, readNode());
+            }
+            if (tag >= BINARY && tag < TAGS) {
+                Token operator = operator(tag - BINARY);
+                Expression left = readNode();
+                return new Expression.Binary(left, operator, readNode());
+            }
+
+            switch (tag) {
+                case NIL: return new Expression.Literal(null);
+                case TRUE: return new Expression.Literal(true);
+                case FALSE: return new Expression.Literal(false);
+                case CONSTANT:
+                    int index = readLength();
+                    if (index >= constants.length) {
+                        throw new FormatException("Constant " + index + " is not in the constant pool.");
+                    }
+                    return new Expression.Literal(constants[index]);
+                case GROUPING:
+                    return new Expression.Grouping(readNode());
+            }
+            throw new FormatException("Unknown node tag " + tag + ".");
+        }
+
+        private Token operator(int index) {
+            TokenType type = OPERATORS[index];
+            return new Token(type, Scanner.lexeme(type), null, line);
+        }
+
+        // Reads a count, a size or an index, which a damaged file could have made negative
+        private int readLength() throws IOException {
+            int length = readVarint();
+            if (length < 0) {
+                throw new FormatException("Compiled file has a negative length.");
+            }
+            return length;
+        }
+
+        private int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                byte b = readByte();
+                // Only the low four bits of a fifth byte are left in an int, and it has to be the last byte
+                if (shift == 28 && (b & 0xFF) > 0x0F) {
+                    throw new FormatException("Varint does not fit in 32 bits.");
+                }
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new FormatException("Varint is too long.");
+        }
+
+        // Whether every byte of the file has been read
+        private boolean atEnd() throws IOException {
+            if (buffer.hasRemaining()) {
+                return false;
+            }
+            if (stream == null) {
+                return true;
+            }
+            int read = stream.read(buffer.array(), 0, buffer.capacity());
+            if (read <= 0) {
+                return true;
+            }
+            buffer.position(0);
+            buffer.limit(read);
+            return false;
+        }
+
+        private byte readByte() throws IOException {
+            if (!buffer.hasRemaining()) {
+                refill();
+            }
+            return buffer.get();
+        }
+
+        private void refill() throws IOException {
+            int read = stream == null ? -1 : stream.read(buffer.array(), 0, buffer.capacity());
+            if (read <= 0) {
+                throw new FormatException("Compiled file is truncated.");
+            }
+            buffer.position(0);
+            buffer.limit(read);
+        }
+    }
+
+    // Unsigned LEB128: seven bits per byte, low bits first, with the high bit set on every byte but the last
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
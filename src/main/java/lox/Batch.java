@@ -0,0 +1,141 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Runs many scripts at once, each in its own Session, so one script's errors never leak into another's.
+// Scripts run on a pool with one thread per core, but their output is printed in the order they were given,
+// each under a "==> path <==" header, exactly as if they had been run one after another
+class Batch {
+    private final Session template;
+
+    // The outcome of one script: everything it printed, and whether it failed
+    private static class Result {
+        final Path path;
+        final String output;
+        final boolean hadError;
+        final boolean hadRuntimeError;
+
+        Result(Path path, String output, boolean hadError, boolean hadRuntimeError) {
+            this.path = path;
+            this.output = output;
+            this.hadError = hadError;
+            this.hadRuntimeError = hadRuntimeError;
+        }
+    }
+
+    // Every script runs in a fork of "template", so they all get its options
+    Batch(Session template) {
+        this.template = template;
+    }
+
+    // Finds the scripts to run: every .lox file in a directory, in name order, or every non-empty line of a
+    // manifest file, relative to the manifest's directory
+    static List<Path> scripts(Path directoryOrManifest) throws IOException {
+        List<Path> scripts = new ArrayList<>();
+
+        if (Files.isDirectory(directoryOrManifest)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directoryOrManifest, "*.lox")) {
+                for (Path file : files) {
+                    scripts.add(file);
+                }
+            }
+            Collections.sort(scripts);
+        }
+        else {
+            Path base = directoryOrManifest.toAbsolutePath().getParent();
+            for (String line : Files.readAllLines(directoryOrManifest, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty()) {
+                    scripts.add(base.resolve(line));
+                }
+            }
+        }
+
+        return scripts;
+    }
+
+    // Runs every script and prints their output to the template session, in order. Returns the exit code
+    // runFile would have used for the worst failure: 65 if any script had a syntax error, otherwise 70 if
+    // any had a runtime error, otherwise 0
+    int run(List<Path> scripts) {
+        ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            List<Future<Result>> results = new ArrayList<>(scripts.size());
+            for (Path script : scripts) {
+                results.add(pool.submit(() -> runScript(script)));
+            }
+
+            boolean hadError = false;
+            boolean hadRuntimeError = false;
+            for (Future<Result> future : results) {
+                Result result = join(future);
+                template.out.println("==> " + result.path + " <==");
+                template.out.print(result.output);
+                hadError |= result.hadError;
+                hadRuntimeError |= result.hadRuntimeError;
+            }
+            template.out.flush();
+
+            if (hadError) {
+                return 65;
+            }
+            if (hadRuntimeError) {
+                return 70;
+            }
+            return 0;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Runs one script in a fresh session. Its output and errors are kept in one buffer, interleaved the way
+    // they would have been on a terminal. A script that can't be read, or that makes jlox itself fail, counts
+    // as one with a syntax error, and the other scripts still run
+    private Result runScript(Path script) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(buffer, false);
+        Session session = template.fork(stream, stream);
+
+        try {
+            session.run(Lox.map(script));
+        } catch (IOException error) {
+            stream.println("Could not read " + script + ": " + error.getMessage());
+            session.reporter.hadError = true;
+        } catch (RuntimeException | StackOverflowError error) {
+            // Limits of jlox rather than Lox errors, like too many constants for the VM or a tree nested too
+            // deep for the stack. Other errors, like running out of memory, leave the whole JVM in doubt, so
+            // they stop the batch
+            stream.println("Could not run " + script + ": " + error);
+            session.reporter.hadError = true;
+        }
+
+        stream.flush();
+        return new Result(script, buffer.toString(), session.reporter.hadError, session.reporter.hadRuntimeError);
+    }
+
+    private static Result join(Future<Result> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(error);
+        } catch (ExecutionException error) {
+            if (error.getCause() instanceof Error) {
+                throw (Error)error.getCause();
+            }
+            throw new IllegalStateException(error.getCause());
+        }
+    }
+}
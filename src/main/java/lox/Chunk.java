@@ -0,0 +1,65 @@
+package lox;
+
+import java.util.Arrays;
+
+// A compiled expression: a flat array of instructions plus the constants they refer to.
+// Numbers and strings live in separate pools so the VM can load numbers without unboxing them
+class Chunk {
+    byte[] code = new byte[16];
+    int count = 0;
+
+    double[] numbers = new double[4];
+    int numberCount = 0;
+
+    String[] strings = new String[4];
+    int stringCount = 0;
+
+    // The operator token for each instruction that can fail, used to report runtime errors
+    Token[] tokens = new Token[16];
+
+    // The deepest the operand stack gets while running this chunk
+    int maxStackSize = 0;
+
+    // Appends an instruction, remembering the token to blame if it fails
+    void write(byte instruction, Token token) {
+        if (count + 4 > code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+            tokens = Arrays.copyOf(tokens, code.length);
+        }
+
+        tokens[count] = token;
+        code[count++] = instruction;
+    }
+
+    // Appends an instruction followed by its 3-byte operand
+    void write(byte instruction, int operand) {
+        write(instruction, (Token)null);
+        code[count++] = (byte)(operand >> 16);
+        code[count++] = (byte)(operand >> 8);
+        code[count++] = (byte)operand;
+    }
+
+    int addNumber(double value) {
+        if (numberCount == numbers.length) {
+            numbers = Arrays.copyOf(numbers, numbers.length * 2);
+        }
+        numbers[numberCount] = value;
+        return numberCount++;
+    }
+
+    int addString(String value) {
+        if (stringCount == strings.length) {
+            strings = Arrays.copyOf(strings, strings.length * 2);
+        }
+        strings[stringCount] = value;
+        return stringCount++;
+    }
+
+    // Shrinks every array to what was actually written, once compiling is done
+    void trim() {
+        code = Arrays.copyOf(code, count);
+        tokens = Arrays.copyOf(tokens, count);
+        numbers = Arrays.copyOf(numbers, numberCount);
+        strings = Arrays.copyOf(strings, stringCount);
+    }
+}
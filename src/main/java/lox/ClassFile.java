@@ -0,0 +1,331 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Just enough of the JVM class file format to write one small class: a public final class with a no-argument
+// constructor and one public method, whose bytecode is emitted by hand through the methods below.
+// It writes version 49 (Java 5) class files, which don't need StackMapTable frames, so code can branch
+// without anyone having to work out the type of every stack slot at every jump target
+class ClassFile {
+    // The opcodes JvmCompiler uses, from chapter 6 of the JVM specification
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int DCONST_0 = 0x0E;
+    static final int DCONST_1 = 0x0F;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int LDC2_W = 0x14;
+    static final int ALOAD_0 = 0x2A;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP2_X2 = 0x5E;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6B;
+    static final int DDIV = 0x6F;
+    static final int DNEG = 0x77;
+    static final int IXOR = 0x82;
+    static final int LCMP = 0x94;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFLT = 0x9B;
+    static final int IFGE = 0x9C;
+    static final int IFGT = 0x9D;
+    static final int IFLE = 0x9E;
+    static final int IF_ICMPNE = 0xA0;
+    static final int GOTO = 0xA7;
+    static final int ARETURN = 0xB0;
+    static final int RETURN = 0xB1;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+
+    // Thrown when the class would break one of the class file format's size limits
+    static class TooLargeException extends Exception {
+        TooLargeException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_DOUBLE = 6;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int LIMIT = 0xFFFF;
+
+    // The constant pool, already encoded, and the index of every constant in it so each is only written once
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final Map<Object, Integer> constants = new HashMap<>();
+    private int poolCount = 1;
+
+    // The code of the one method, and how deep its operand stack gets, in slots (doubles take two)
+    private byte[] code = new byte[256];
+    private int length = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+
+    // Emits an instruction without operands that changes the stack depth by "effect" slots
+    void emit(int opcode, int effect) {
+        write(opcode);
+        adjustStack(effect);
+    }
+
+    // Emits an instruction with a two-byte constant pool index operand
+    void emit(int opcode, int index, int effect) {
+        write(opcode);
+        write(index >> 8);
+        write(index);
+        adjustStack(effect);
+    }
+
+    // Pushes a String or Double constant, using the shortest form of ldc that reaches it
+    void emitConstant(Object value) throws TooLargeException {
+        if (value instanceof Double) {
+            emit(LDC2_W, doubleConstant((Double)value), 2);
+            return;
+        }
+
+        int index = stringConstant((String)value);
+        if (index <= 0xFF) {
+            write(LDC);
+            write(index);
+            adjustStack(1);
+        } else {
+            emit(LDC_W, index, 1);
+        }
+    }
+
+    // Emits a conditional branch (which pops "popped" slots) that skips over a push of 1 to a push of 0,
+    // so the int left on the stack is 1 exactly when the branch isn't taken
+    void emitBooleanUnless(int branchOpcode, int popped) {
+        int jumpIfFalse = length;
+        emit(branchOpcode, 0, -popped);
+        emit(ICONST_1, 1);
+        int jumpToEnd = length;
+        emit(GOTO, 0, 0);
+        patch(jumpIfFalse);
+
+        // Only one of the two pushes ever happens
+        adjustStack(-1);
+        emit(ICONST_0, 1);
+        patch(jumpToEnd);
+    }
+
+    int methodref(String owner, String name, String descriptor) throws TooLargeException {
+        Integer index = constants.get("M" + owner + "." + name + descriptor);
+        if (index != null) {
+            return index;
+        }
+
+        int ownerIndex = classConstant(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        index = add(CONSTANT_METHODREF, 1);
+        poolShort(ownerIndex);
+        poolShort(nameAndType);
+        constants.put("M" + owner + "." + name + descriptor, index);
+        return index;
+    }
+
+    // Writes out the whole class. "name" and "interfaceName" are internal names, like "lox/Example"
+    byte[] toByteArray(String name, String interfaceName, String methodName, String methodDescriptor)
+            throws TooLargeException {
+        if (length > LIMIT) {
+            throw new TooLargeException("Method is " + length + " bytes long.");
+        }
+        if (maxStack > LIMIT) {
+            throw new TooLargeException("Method needs " + maxStack + " stack slots.");
+        }
+
+        int thisClass = classConstant(name);
+        int superClass = classConstant("java/lang/Object");
+        int interfaceClass = classConstant(interfaceName);
+        int objectInit = methodref("java/lang/Object", "<init>", "()V");
+        int codeName = utf8("Code");
+        int initName = utf8("<init>");
+        int initDescriptor = utf8("()V");
+        int methodNameIndex = utf8(methodName);
+        int methodDescriptorIndex = utf8(methodDescriptor);
+
+        if (poolCount > LIMIT) {
+            throw new TooLargeException("Constant pool has " + poolCount + " entries.");
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(pool.size() + length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            // No fields
+            out.writeShort(0);
+
+            out.writeShort(2);
+            byte[] init = {(byte)ALOAD_0, (byte)INVOKESPECIAL, (byte)(objectInit >> 8), (byte)objectInit, (byte)RETURN};
+            writeMethod(out, initName, initDescriptor, codeName, 1, init, init.length);
+            writeMethod(out, methodNameIndex, methodDescriptorIndex, codeName, maxStack, code, length);
+
+            // No class attributes
+            out.writeShort(0);
+        } catch (IOException error) {
+            // A ByteArrayOutputStream never throws
+            throw new IllegalStateException(error);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int codeName,
+                                    int maxStack, byte[] code, int length) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+
+        out.writeShort(codeName);
+        out.writeInt(12 + length);
+        out.writeShort(maxStack);
+        // Only "this"
+        out.writeShort(1);
+        out.writeInt(length);
+        out.write(code, 0, length);
+        // No exception table, no attributes
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    private void write(int b) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = (byte)b;
+    }
+
+    private void adjustStack(int effect) {
+        stack += effect;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    // Points the branch instruction at "at" to the next instruction emitted
+    private void patch(int at) {
+        int offset = length - at;
+        code[at + 1] = (byte)(offset >> 8);
+        code[at + 2] = (byte)offset;
+    }
+
+    // Doubles are keyed by their bits, so 0 and -0 get different constants
+    private int doubleConstant(double value) throws TooLargeException {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = constants.get(bits);
+        if (index != null) {
+            return index;
+        }
+
+        index = add(CONSTANT_DOUBLE, 2);
+        poolLong(bits);
+        constants.put(bits, index);
+        return index;
+    }
+
+    private int stringConstant(String value) throws TooLargeException {
+        Integer index = constants.get("S" + value);
+        if (index != null) {
+            return index;
+        }
+
+        int utf8 = utf8(value);
+        index = add(CONSTANT_STRING, 1);
+        poolShort(utf8);
+        constants.put("S" + value, index);
+        return index;
+    }
+
+    private int classConstant(String name) throws TooLargeException {
+        Integer index = constants.get("C" + name);
+        if (index != null) {
+            return index;
+        }
+
+        int utf8 = utf8(name);
+        index = add(CONSTANT_CLASS, 1);
+        poolShort(utf8);
+        constants.put("C" + name, index);
+        return index;
+    }
+
+    private int nameAndType(String name, String descriptor) throws TooLargeException {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int index = add(CONSTANT_NAME_AND_TYPE, 1);
+        poolShort(nameIndex);
+        poolShort(descriptorIndex);
+        return index;
+    }
+
+    private int utf8(String value) throws TooLargeException {
+        Integer index = constants.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+
+        // Modified UTF-8, the same encoding DataOutputStream.writeUTF uses
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(value.length() + 2);
+        try {
+            new DataOutputStream(encoded).writeUTF(value);
+        } catch (UTFDataFormatException error) {
+            throw new TooLargeException("String constant is longer than 65535 bytes.");
+        } catch (IOException error) {
+            // A ByteArrayOutputStream never throws
+            throw new IllegalStateException(error);
+        }
+        index = add(CONSTANT_UTF8, 1);
+        pool.write(encoded.toByteArray(), 0, encoded.size());
+        constants.put("U" + value, index);
+        return index;
+    }
+
+    // Starts a new constant, which takes up "slots" indexes in the pool (two for doubles)
+    private int add(int tag, int slots) throws TooLargeException {
+        if (poolCount + slots > LIMIT) {
+            throw new TooLargeException("Constant pool is full.");
+        }
+        int index = poolCount;
+        poolCount += slots;
+        pool.write(tag);
+        return index;
+    }
+
+    private void poolShort(int value) {
+        pool.write(value >> 8);
+        pool.write(value);
+    }
+
+    private void poolLong(long value) {
+        poolShort((int)(value >> 48));
+        poolShort((int)(value >> 32));
+        poolShort((int)(value >> 16));
+        poolShort((int)value);
+    }
+}
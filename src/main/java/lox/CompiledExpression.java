@@ -0,0 +1,8 @@
+package lox;
+
+// An expression that JvmCompiler turned into a JVM class. Public because generated classes are defined
+// by their own class loader, which puts them in a different runtime package than this interface
+public interface CompiledExpression {
+    // Returns the expression's value, boxed the same way the Interpreter would have returned it
+    Object evaluate();
+}
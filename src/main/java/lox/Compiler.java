@@ -0,0 +1,133 @@
+package lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Lowers an expression tree into a Chunk of bytecode for the VM.
+// Operands are emitted before their operator, so the code runs as a plain stack machine
+class Compiler implements Expression.Visitor<Void> {
+    // Constant pool indexes are stored in three bytes
+    private static final int MAX_CONSTANTS = 1 << 24;
+
+    private Chunk chunk;
+    private final Map<Double, Integer> numberIndexes = new HashMap<>();
+    private final Map<String, Integer> stringIndexes = new HashMap<>();
+    private int stackSize = 0;
+
+    Chunk compile(Expression expression) {
+        chunk = new Chunk();
+        numberIndexes.clear();
+        stringIndexes.clear();
+        stackSize = 0;
+
+        expression.accept(this);
+        chunk.write(OpCode.RETURN, (Token)null);
+        chunk.trim();
+
+        return chunk;
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        Object value = expression.value;
+
+        if (value == null) {
+            emit(OpCode.NIL, null);
+        } else if (value instanceof Boolean) {
+            emit((Boolean)value ? OpCode.TRUE : OpCode.FALSE, null);
+        } else if (value instanceof Double) {
+            emitConstant(OpCode.NUMBER, numberConstant((Double)value));
+        } else {
+            emitConstant(OpCode.STRING, stringConstant((String)value));
+        }
+
+        push();
+        return null;
+    }
+
+    // Groupings only matter to the parser, so they compile to nothing but their contents
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        expression.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        expression.right.accept(this);
+
+        switch (expression.operator.type) {
+            case MINUS: emit(OpCode.NEGATE, expression.operator); break;
+            case BANG: emit(OpCode.NOT, expression.operator); break;
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        expression.left.accept(this);
+        expression.right.accept(this);
+
+        Token operator = expression.operator;
+        switch (operator.type) {
+            case PLUS: emit(OpCode.ADD, operator); break;
+            case MINUS: emit(OpCode.SUBTRACT, operator); break;
+            case STAR: emit(OpCode.MULTIPLY, operator); break;
+            case SLASH: emit(OpCode.DIVIDE, operator); break;
+            case GREATER: emit(OpCode.GREATER, operator); break;
+            case GREATER_EQUAL: emit(OpCode.GREATER_EQUAL, operator); break;
+            case LESS: emit(OpCode.LESS, operator); break;
+            case LESS_EQUAL: emit(OpCode.LESS_EQUAL, operator); break;
+            case EQUAL_EQUAL: emit(OpCode.EQUAL, operator); break;
+            case BANG_EQUAL: emit(OpCode.NOT_EQUAL, operator); break;
+        }
+
+        // Two operands were popped and one result pushed
+        stackSize--;
+        return null;
+    }
+
+    private void emit(byte instruction, Token token) {
+        chunk.write(instruction, token);
+    }
+
+    private void emitConstant(byte instruction, int index) {
+        chunk.write(instruction, index);
+    }
+
+    // Reuses the pool slot of an equal number, so repeated literals share one constant
+    private int numberConstant(Double value) {
+        Integer index = numberIndexes.get(value);
+        if (index == null) {
+            checkPoolSize(chunk.numberCount);
+            index = chunk.addNumber(value);
+            numberIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private int stringConstant(String value) {
+        Integer index = stringIndexes.get(value);
+        if (index == null) {
+            checkPoolSize(chunk.stringCount);
+            index = chunk.addString(value);
+            stringIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    private void checkPoolSize(int size) {
+        if (size == MAX_CONSTANTS) {
+            throw new IllegalStateException("Too many constants in one chunk.");
+        }
+    }
+
+    // Tracks how deep the operand stack gets, so the VM can size it once up front
+    private void push() {
+        stackSize++;
+        if (stackSize > chunk.maxStackSize) {
+            chunk.maxStackSize = stackSize;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package lox;
+
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+// Interns the values of number and string literals, so every literal with the same value in a compilation
+// unit is one object. The Scanner boxes each literal through the pool, and the Tokens and Expression.Literal
+// nodes made from it all share that object, however many times "0", "1" or "" appear in a script.
+//
+// Lookups never allocate: numbers are found by their bits and strings by their chars in the source, so the
+// Double or String is only created the first time a value is seen. The one exception is text with multi-byte
+// characters read from a Utf8Source, which is decoded before the lookup. A pool is one compilation unit's and
+// isn't thread-safe. A shared pool also asks one process-wide table, which only holds its values weakly, so
+// units parsed one after another, like the requests of a Server, share values for as long as any tree
+// still uses them.
+//
+// Interning a string costs a second pass over its chars, which doubles the cost of scanning a source whose
+// strings are all different. So an unshared pool checks how often its strings are found, and once a window
+// of them is found too rarely, it stops interning strings and just copies each one out of the source
+class ConstantPool {
+    // Strings looked up before the pool decides whether interning them pays, and how many of those have to
+    // be found already for it to keep going
+    private static final int STRING_WINDOW = 256;
+    private static final int STRING_WINDOW_HITS = STRING_WINDOW / 8;
+
+    // Guarded by itself. Each key maps to a reference to itself, so the table doesn't keep its keys alive
+    private static final Map<Object, WeakReference<Object>> SHARED = new WeakHashMap<>();
+
+    private final boolean shared;
+
+    // The values in the order they were added
+    private Object[] values = new Object[32];
+    private int size = 0;
+
+    // Open addressing with linear probing. Each slot is a value's hash in the high half and its index in
+    // "values" plus one in the low half, or 0 if it's empty. Keeping the table primitive means a probe touches
+    // one array, and the garbage collector never has to scan it
+    private long[] slots = new long[64];
+
+    // Strings found and not found in the current window, and whether they're still being interned at all
+    private int stringHits = 0;
+    private int stringMisses = 0;
+    private boolean internStrings = true;
+
+    ConstantPool() {
+        this(false);
+    }
+
+    ConstantPool(boolean shared) {
+        this.shared = shared;
+    }
+
+    // The one Double with the same bits as "value". Like Double.equals, NaN is one value, and 0 and -0 are two
+    Double number(double value) {
+        long bits = Double.doubleToLongBits(value);
+        int hash = mix((int)(bits ^ (bits >>> 32)));
+
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            Object found = match(slots[slot], hash);
+            if (found instanceof Double && Double.doubleToLongBits((Double)found) == bits) {
+                return (Double)found;
+            }
+        }
+        return (Double)add(hash, Double.valueOf(value));
+    }
+
+    // The one String with the same text as source[from, to), or just a String with that text once the pool
+    // has stopped interning them
+    String string(CharSequence source, int from, int to) {
+        if (!internStrings) {
+            return source.subSequence(from, to).toString();
+        }
+
+        int code = 0;
+        int bits = 0;
+        for (int i = from; i < to; i++) {
+            char c = source.charAt(i);
+            code = 31 * code + c;
+            bits |= c;
+        }
+        if (bits >= 0x80 && source instanceof Utf8Source) {
+            // A Utf8Source's chars are bytes, which only match the text they decode to when they're all ASCII,
+            // so anything else is decoded first and looked up by its real chars like any other String
+            String text = ((Utf8Source)source).decode(from, to);
+            return string(text, 0, text.length());
+        }
+        int hash = mix(code);
+
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask) {
+            Object found = match(slots[slot], hash);
+            if (found instanceof String && matches((String)found, source, from, to)) {
+                stringHits++;
+                return (String)found;
+            }
+        }
+
+        // Only a miss can make the hit rate drop, so only a miss checks whether the window is over
+        if (!shared && ++stringMisses + stringHits >= STRING_WINDOW) {
+            internStrings = stringHits >= STRING_WINDOW_HITS;
+            stringMisses = 0;
+            stringHits = 0;
+        }
+        return (String)add(hash, source.subSequence(from, to).toString());
+    }
+
+    // How many distinct values the pool holds
+    int size() {
+        return size;
+    }
+
+    // Adds a value that isn't in the pool yet, swapping it for the process-wide one if this pool is shared
+    private Object add(int hash, Object value) {
+        if (shared) {
+            value = canonical(value);
+        }
+
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size] = value;
+        size++;
+
+        if (size * 2 > slots.length) {
+            grow();
+        }
+        insert(slots, (long)hash << 32 | size);
+        return value;
+    }
+
+    // The value in a slot if its hash is "hash", so equals() is only called on likely matches
+    private Object match(long slot, int hash) {
+        return (int)(slot >>> 32) == hash ? values[(int)slot - 1] : null;
+    }
+
+    private void grow() {
+        long[] grown = new long[slots.length * 2];
+        for (long slot : slots) {
+            if (slot != 0) {
+                insert(grown, slot);
+            }
+        }
+        slots = grown;
+    }
+
+    private static void insert(long[] slots, long entry) {
+        int mask = slots.length - 1;
+        int slot = (int)(entry >>> 32) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = entry;
+    }
+
+    private static Object canonical(Object value) {
+        synchronized (SHARED) {
+            WeakReference<Object> reference = SHARED.get(value);
+            Object canonical = reference == null ? null : reference.get();
+            if (canonical == null) {
+                SHARED.put(value, new WeakReference<>(value));
+                canonical = value;
+            }
+            return canonical;
+        }
+    }
+
+    private static boolean matches(String value, CharSequence source, int from, int to) {
+        if (value.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (value.charAt(i) != source.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Spreads every bit of the hash into the low ones the table is indexed by. Whole numbers only differ in
+    // the high bits of a double, so without this they'd all land in a few slots
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,125 @@
+package lox;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+// Evaluates a DAG made by HashConser to the same value as Interpreter.evaluate(), but works out each shared
+// node only once per evaluation and reuses its value for every other parent. That's always safe, because
+// expressions have no side effects: a node evaluates to the same value wherever it appears, and if it fails,
+// the first time it's reached is the only time. Literals aren't remembered, since reading one is cheaper
+// than looking it up, and neither are nodes with one parent, since they only run once anyway.
+// Holds the values of one evaluation at a time, so it can't be shared by threads
+class DagEvaluator extends ExpressionSwitch<Object> {
+    private final Expression root;
+
+    // Where each shared node's value goes during an evaluation
+    private final Map<Expression, Integer> slots = new IdentityHashMap<>();
+    // A bit for the identity hash of every shared node, so most other nodes can skip looking in "slots"
+    private final long[] filter;
+    private final int filterMask;
+    private Object[] values;
+    private boolean[] known;
+
+    DagEvaluator(Expression root) {
+        this.root = root;
+        Map<Expression, Integer> parents = new IdentityHashMap<>();
+        countParents(root, parents);
+        for (Map.Entry<Expression, Integer> node : parents.entrySet()) {
+            if (node.getValue() > 1 && node.getKey().kind != Expression.LITERAL) {
+                slots.put(node.getKey(), slots.size());
+            }
+        }
+
+        // At least 8 bits per shared node, so few other nodes land on a set bit
+        int bits = Math.max(Integer.highestOneBit(Math.max(slots.size() * 8 - 1, 1)) << 1, 64);
+        filter = new long[bits / 64];
+        filterMask = bits - 1;
+        for (Expression node : slots.keySet()) {
+            int bit = System.identityHashCode(node) & filterMask;
+            filter[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    // The number of nodes whose value is remembered, because more than one node uses it
+    int sharedNodes() {
+        return slots.size();
+    }
+
+    Object evaluate() {
+        values = new Object[slots.size()];
+        known = new boolean[slots.size()];
+        try {
+            return Rope.flatten(operand(root));
+        } finally {
+            values = null;
+            known = null;
+        }
+    }
+
+    @Override
+    public Object visitLiteralExpression(Expression.Literal expression) {
+        return expression.value;
+    }
+
+    @Override
+    public Object visitGroupingExpression(Expression.Grouping expression) {
+        return operand(expression.expression);
+    }
+
+    @Override
+    public Object visitUnaryExpression(Expression.Unary expression) {
+        return Interpreter.unary(expression.operator, operand(expression.right));
+    }
+
+    @Override
+    public Object visitBinaryExpression(Expression.Binary expression) {
+        Object left = operand(expression.left);
+        Object right = operand(expression.right);
+        return Interpreter.binary(expression.operator, left, right);
+    }
+
+    // Evaluates a node, or returns its value from earlier in this evaluation if it's shared
+    private Object operand(Expression expression) {
+        if (expression.kind == Expression.LITERAL) {
+            return ((Expression.Literal)expression).value;
+        }
+
+        int bit = System.identityHashCode(expression) & filterMask;
+        if ((filter[bit >>> 6] & (1L << bit)) == 0) {
+            return dispatch(expression);
+        }
+        Integer slot = slots.get(expression);
+        if (slot == null) {
+            return dispatch(expression);
+        }
+        if (!known[slot]) {
+            values[slot] = dispatch(expression);
+            known[slot] = true;
+        }
+        return values[slot];
+    }
+
+    // Counts how many parents every node below "expression" has, visiting each shared node's operands once
+    private static void countParents(Expression expression, Map<Expression, Integer> parents) {
+        switch (expression.kind) {
+            case Expression.BINARY:
+                Expression.Binary binary = (Expression.Binary)expression;
+                countParent(binary.left, parents);
+                countParent(binary.right, parents);
+                break;
+            case Expression.GROUPING:
+                countParent(((Expression.Grouping)expression).expression, parents);
+                break;
+            case Expression.UNARY:
+                countParent(((Expression.Unary)expression).right, parents);
+                break;
+        }
+    }
+
+    private static void countParent(Expression operand, Map<Expression, Integer> parents) {
+        Integer count = parents.merge(operand, 1, Integer::sum);
+        if (count == 1) {
+            countParents(operand, parents);
+        }
+    }
+}
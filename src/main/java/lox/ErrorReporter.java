@@ -0,0 +1,56 @@
+package lox;
+
+import java.io.PrintStream;
+
+// Prints the errors of one run of Lox code and remembers whether there were any.
+// Every run gets its own reporter, so runs on different threads never see each other's errors
+class ErrorReporter {
+    private final PrintStream err;
+
+    boolean hadError = false;
+    boolean hadRuntimeError = false;
+
+    // Added to every line number printed, for code that's one part of a bigger input, like one line of --lines
+    int lineOffset = 0;
+
+    // Every error ever reported, which reset() leaves alone
+    int errorCount = 0;
+    int runtimeErrorCount = 0;
+
+    ErrorReporter(PrintStream err) {
+        this.err = err;
+    }
+
+    // Non-private method to give access to error reporting method, "report"
+    void error(int line, String message) {
+        report(line, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line, " at end", message);
+        } else {
+            report(token.line, " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    // Reports an error that happened while evaluating, and remembers it so runFile can exit with it
+    void runtimeError(RuntimeError error) {
+        err.println(error.getMessage() + "\n[line " + (error.token.line + lineOffset) + "]");
+        hadRuntimeError = true;
+        runtimeErrorCount++;
+    }
+
+    // Forgets earlier errors, so one typo doesn't end a whole REPL session
+    void reset() {
+        hadError = false;
+        hadRuntimeError = false;
+    }
+
+    // Reports syntax errors and their location to the user, and remembers that there was an error
+    private void report(int line, String where, String message) {
+        err.println("[line " + (line + lineOffset) + "] Error"+ where + ": " + message);
+        hadError = true;
+        errorCount++;
+    }
+}
@@ -4,6 +4,12 @@ import java.util.List;
 
 abstract class Expression {
 
+  // Which subclass an expression is, so it can be dispatched on with a switch instead of accept()
+  static final int BINARY = 0;
+  static final int GROUPING = 1;
+  static final int LITERAL = 2;
+  static final int UNARY = 3;
+
   interface Visitor<R> {
     R visitBinaryExpression(Binary expression);
     R visitGroupingExpression(Grouping expression);
@@ -13,6 +19,7 @@ abstract class Expression {
 
   static class Binary extends Expression {
     Binary(Expression left, Token operator, Expression right) {
+      super(BINARY);
       this.left = left;
       this.operator = operator;
       this.right = right;
@@ -29,6 +36,7 @@ abstract class Expression {
 
   static class Grouping extends Expression {
     Grouping(Expression expression) {
+      super(GROUPING);
       this.expression = expression;
     }
 
@@ -41,6 +49,7 @@ abstract class Expression {
 
   static class Literal extends Expression {
     Literal(Object value) {
+      super(LITERAL);
       this.value = value;
     }
 
@@ -53,6 +62,7 @@ abstract class Expression {
 
   static class Unary extends Expression {
     Unary(Token operator, Expression right) {
+      super(UNARY);
       this.operator = operator;
       this.right = right;
     }
@@ -65,5 +75,11 @@ abstract class Expression {
     final Expression right;
   }
 
+  Expression(int kind) {
+    this.kind = kind;
+  }
+
+  final int kind;
+
   abstract <R> R accept(Visitor<R> visitor);
 }
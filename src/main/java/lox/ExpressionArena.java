@@ -0,0 +1,155 @@
+package lox;
+
+import java.util.Arrays;
+
+// The same nodes as Expression, stored flat. A node is the index of a run of ints in one array:
+// its kind, then one slot per field. A child Expression is stored as the index of the child
+// node, and any other field as an index into a pool of values of that type. Nodes can only refer
+// to nodes that already exist, so children always come before their parents
+final class ExpressionArena {
+
+  static final int BINARY = 0;
+  static final int GROUPING = 1;
+  static final int LITERAL = 2;
+  static final int UNARY = 3;
+
+  // How many ints each kind of node takes, including its kind
+  private static final int[] WIDTHS = {4, 2, 2, 3};
+
+  interface Visitor<R> {
+    R visitBinaryExpression(ExpressionArena arena, int node);
+    R visitGroupingExpression(ExpressionArena arena, int node);
+    R visitLiteralExpression(ExpressionArena arena, int node);
+    R visitUnaryExpression(ExpressionArena arena, int node);
+  }
+
+  private int[] nodes;
+  private int size = 0;
+  private int last = -1;
+  private Token[] tokens;
+  private int tokensCount = 0;
+  private Object[] objects;
+  private int objectsCount = 0;
+
+  ExpressionArena() {
+    this(64, 16);
+  }
+
+  // Makes room for "ints" ints of nodes and "values" values in each pool before anything has to grow
+  ExpressionArena(int ints, int values) {
+    nodes = new int[Math.max(ints, 8)];
+    tokens = new Token[Math.max(values, 8)];
+    objects = new Object[Math.max(values, 8)];
+  }
+
+  int binary(int left, Token operator, int right) {
+    int node = allocate(BINARY);
+    nodes[node + 1] = left;
+    nodes[node + 2] = addToken(operator);
+    nodes[node + 3] = right;
+    return node;
+  }
+
+  int binaryLeft(int node) {
+    return nodes[node + 1];
+  }
+
+  Token binaryOperator(int node) {
+    return tokens[nodes[node + 2]];
+  }
+
+  int binaryRight(int node) {
+    return nodes[node + 3];
+  }
+
+  int grouping(int expression) {
+    int node = allocate(GROUPING);
+    nodes[node + 1] = expression;
+    return node;
+  }
+
+  int groupingExpression(int node) {
+    return nodes[node + 1];
+  }
+
+  int literal(Object value) {
+    int node = allocate(LITERAL);
+    nodes[node + 1] = addObject(value);
+    return node;
+  }
+
+  Object literalValue(int node) {
+    return objects[nodes[node + 1]];
+  }
+
+  int unary(Token operator, int right) {
+    int node = allocate(UNARY);
+    nodes[node + 1] = addToken(operator);
+    nodes[node + 2] = right;
+    return node;
+  }
+
+  Token unaryOperator(int node) {
+    return tokens[nodes[node + 1]];
+  }
+
+  int unaryRight(int node) {
+    return nodes[node + 2];
+  }
+
+  int kind(int node) {
+    return nodes[node];
+  }
+
+  // The node stored right after this one, which is the end of the arena for the last node
+  int next(int node) {
+    return node + WIDTHS[nodes[node]];
+  }
+
+  // The index just past the last node, so nodes are found from 0 up to here with next()
+  int end() {
+    return size;
+  }
+
+  // The node added last, which is the root when the arena holds one tree built bottom up
+  int root() {
+    return last;
+  }
+
+  <R> R accept(int node, Visitor<R> visitor) {
+    switch (nodes[node]) {
+      case BINARY: return visitor.visitBinaryExpression(this, node);
+      case GROUPING: return visitor.visitGroupingExpression(this, node);
+      case LITERAL: return visitor.visitLiteralExpression(this, node);
+      case UNARY: return visitor.visitUnaryExpression(this, node);
+    }
+    throw new IllegalArgumentException("No node at " + node + ".");
+  }
+
+  private int allocate(int kind) {
+    int node = size;
+    if (size + WIDTHS[kind] > nodes.length) {
+      nodes = Arrays.copyOf(nodes, nodes.length * 2);
+    }
+    nodes[node] = kind;
+    size += WIDTHS[kind];
+    last = node;
+    return node;
+  }
+
+  private int addToken(Token value) {
+    if (tokensCount == tokens.length) {
+      tokens = Arrays.copyOf(tokens, tokensCount * 2);
+    }
+    tokens[tokensCount] = value;
+    return tokensCount++;
+  }
+
+  private int addObject(Object value) {
+    if (objectsCount == objects.length) {
+      objects = Arrays.copyOf(objects, objectsCount * 2);
+    }
+    objects[objectsCount] = value;
+    return objectsCount++;
+  }
+}
@@ -0,0 +1,17 @@
+package lox;
+
+// A visitor of Expression trees that finds the visit method for an expression with a switch on its kind,
+// rather than with accept() and then a second call back into the visitor. Subclasses recurse with
+// dispatch() so the only virtual call left per node is to their own visit method
+abstract class ExpressionSwitch<R> implements Expression.Visitor<R> {
+
+  final R dispatch(Expression expression) {
+    switch (expression.kind) {
+      case Expression.BINARY: return visitBinaryExpression((Expression.Binary) expression);
+      case Expression.GROUPING: return visitGroupingExpression((Expression.Grouping) expression);
+      case Expression.LITERAL: return visitLiteralExpression((Expression.Literal) expression);
+      case Expression.UNARY: return visitUnaryExpression((Expression.Unary) expression);
+    }
+    throw new IllegalArgumentException("Unknown expression kind " + expression.kind + ".");
+  }
+}
@@ -0,0 +1,93 @@
+package lox;
+
+// Text that's edited in place, the way an editor holds a buffer. The chars live in one array with a gap of
+// free space where the last edit was, so an edit only moves the chars between it and the one before, and
+// typing in one place moves nothing at all. Reading a char just skips the gap.
+//
+// Unlike a String it changes, so anything that reads it, like a TokenBuffer asked for a lexeme, sees the
+// text as it is now rather than as it was when it was handed over
+class GapBuffer implements CharSequence {
+    private char[] chars;
+    private int gapStart;
+    private int gapEnd;
+
+    GapBuffer(String text) {
+        chars = new char[Math.max(text.length() * 2, 16)];
+        text.getChars(0, text.length(), chars, 0);
+        gapStart = text.length();
+        gapEnd = chars.length;
+    }
+
+    // Replaces "removed" chars at "offset" with "inserted"
+    void replace(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > length()) {
+            throw new IndexOutOfBoundsException("Edit of " + removed + " chars at " + offset + " is outside the text.");
+        }
+
+        moveGap(offset);
+        gapEnd += removed;
+        if (inserted.length() > gapEnd - gapStart) {
+            grow(inserted.length());
+        }
+        inserted.getChars(0, inserted.length(), chars, gapStart);
+        gapStart += inserted.length();
+    }
+
+    @Override
+    public int length() {
+        return chars.length - (gapEnd - gapStart);
+    }
+
+    @Override
+    public char charAt(int index) {
+        return index < gapStart ? chars[index] : chars[index + gapEnd - gapStart];
+    }
+
+    // A copy of the text between start and end, as it is now
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length()) {
+            throw new IndexOutOfBoundsException("Chars " + start + " to " + end + " are outside the text.");
+        }
+        if (end <= gapStart) {
+            return new String(chars, start, end - start);
+        }
+        if (start >= gapStart) {
+            return new String(chars, start + gapEnd - gapStart, end - start);
+        }
+        char[] copy = new char[end - start];
+        System.arraycopy(chars, start, copy, 0, gapStart - start);
+        System.arraycopy(chars, gapEnd, copy, gapStart - start, end - gapStart);
+        return new String(copy);
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    // Moves the gap to start at "offset", shifting the chars in between to the other side of it
+    private void moveGap(int offset) {
+        if (offset < gapStart) {
+            int moved = gapStart - offset;
+            System.arraycopy(chars, offset, chars, gapEnd - moved, moved);
+            gapStart -= moved;
+            gapEnd -= moved;
+        } else if (offset > gapStart) {
+            int moved = offset - gapStart;
+            System.arraycopy(chars, gapEnd, chars, gapStart, moved);
+            gapStart += moved;
+            gapEnd += moved;
+        }
+    }
+
+    // Makes the gap big enough for "needed" chars, keeping it where it is
+    private void grow(int needed) {
+        int after = chars.length - gapEnd;
+        char[] grown = new char[Math.max(chars.length * 2, length() + needed + 16)];
+        System.arraycopy(chars, 0, grown, 0, gapStart);
+        System.arraycopy(chars, gapEnd, grown, grown.length - after, after);
+        gapEnd = grown.length - after;
+        chars = grown;
+    }
+}
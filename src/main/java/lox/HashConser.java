@@ -0,0 +1,142 @@
+package lox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+// Turns an expression tree into a DAG where structurally identical subtrees are one shared node, so
+// "(a * b + c) - (a * b + c)" keeps one copy of "a * b + c" with two parents. Works bottom-up: once a node's
+// operands are shared, two nodes are identical exactly when they have the same kind, operator and
+// operand objects, or the same literal value, so each node is one hash lookup.
+//
+// Operators are compared by type and not by line, and the node that's kept is the first copy in the order
+// the Interpreter evaluates them. That's the copy whose runtime error would stop the program anyway, so
+// errors still report the same line. Literals are compared like Interpreter.isEqual, so 0 and -0 stay apart.
+// Counts the nodes it saw and the ones it merged into a copy it had already seen
+class HashConser extends ExpressionSwitch<Expression> {
+    // A node as its identical copies would all look once their operands are shared
+    private static final class Key {
+        final int kind;
+        final TokenType operator;
+        // The operands, compared by identity, or for a literal its value, compared with equals()
+        final Object first;
+        final Object second;
+        final int hash;
+
+        Key(int kind, TokenType operator, Object first, Object second) {
+            this.kind = kind;
+            this.operator = operator;
+            this.first = first;
+            this.second = second;
+            int hash = kind * 31 + (operator == null ? 0 : operator.ordinal());
+            if (kind == Expression.LITERAL) {
+                hash = hash * 31 + Objects.hashCode(first);
+            } else {
+                hash = hash * 31 + System.identityHashCode(first);
+                hash = hash * 31 + System.identityHashCode(second);
+            }
+            // Whole numbers only differ in the high bits of their hash, so this moves the well-mixed high
+            // bits of a multiplicative hash down to where HashMap picks its buckets
+            this.hash = Integer.rotateLeft(hash * 0x9E3779B9, 16);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)other;
+            if (kind != key.kind || operator != key.operator) {
+                return false;
+            }
+            if (kind == Expression.LITERAL) {
+                return Objects.equals(first, key.first);
+            }
+            return first == key.first && second == key.second;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private final Map<Key, Expression> nodes = new HashMap<>();
+    private int seenNodes = 0;
+    private int mergedNodes = 0;
+
+    // Returns the DAG for an expression. Later calls share nodes with earlier ones, and every node returned
+    // is kept until the HashConser is dropped, so each compilation unit should get its own
+    Expression share(Expression expression) {
+        return dispatch(expression);
+    }
+
+    // The number of nodes every share() call so far was given
+    int seenNodes() {
+        return seenNodes;
+    }
+
+    // The number of those that were replaced by an identical node seen before
+    int mergedNodes() {
+        return mergedNodes;
+    }
+
+    @Override
+    public Expression visitLiteralExpression(Expression.Literal expression) {
+        Key key = new Key(Expression.LITERAL, null, expression.value, null);
+        Expression kept = find(key);
+        return kept != null ? kept : keep(key, expression);
+    }
+
+    @Override
+    public Expression visitGroupingExpression(Expression.Grouping expression) {
+        Expression inner = dispatch(expression.expression);
+        Key key = new Key(Expression.GROUPING, null, inner, null);
+        Expression kept = find(key);
+        if (kept != null) {
+            return kept;
+        }
+        return keep(key, inner == expression.expression ? expression : new Expression.Grouping(inner));
+    }
+
+    @Override
+    public Expression visitUnaryExpression(Expression.Unary expression) {
+        Expression right = dispatch(expression.right);
+        Key key = new Key(Expression.UNARY, expression.operator.type, right, null);
+        Expression kept = find(key);
+        if (kept != null) {
+            return kept;
+        }
+        return keep(key, right == expression.right ? expression : new Expression.Unary(expression.operator, right));
+    }
+
+    @Override
+    public Expression visitBinaryExpression(Expression.Binary expression) {
+        Expression left = dispatch(expression.left);
+        Expression right = dispatch(expression.right);
+        Key key = new Key(Expression.BINARY, expression.operator.type, left, right);
+        Expression kept = find(key);
+        if (kept != null) {
+            return kept;
+        }
+        if (left == expression.left && right == expression.right) {
+            return keep(key, expression);
+        }
+        return keep(key, new Expression.Binary(left, expression.operator, right));
+    }
+
+    // The node already kept for "key", or null if this is the first of its kind
+    private Expression find(Key key) {
+        seenNodes++;
+        Expression kept = nodes.get(key);
+        if (kept != null) {
+            mergedNodes++;
+        }
+        return kept;
+    }
+
+    private Expression keep(Key key, Expression expression) {
+        nodes.put(key, expression);
+        return expression;
+    }
+}
@@ -0,0 +1,304 @@
+package lox;
+
+import java.util.Arrays;
+
+// Keeps the tokens and tree of a source buffer up to date as it's edited, like an editor's buffer after every
+// keystroke, without scanning and parsing all of it again each time.
+//
+// An edit is re-scanned from the token before it, because the edit could join onto that token ("1." then "5"),
+// until the scanner reaches a token that started after the edit before too. From there on the text is the same
+// as it was and the scanner is between tokens, so the rest would scan to the same tokens, and the old ones
+// are kept, moved along by the edit. That covers strings and // comments the edit opened or closed, however
+// many lines they run over.
+//
+// Parsing is memoized: each call PrattParser makes to parse an operand is remembered by the token it started
+// at, with its precedence, the subtree it returned and where it stopped. Each token starts at most one call.
+// An edit forgets the calls whose tokens it touched, which are the ones that read the token just before it and
+// everything enclosing them, and parsing again reuses the subtree of every call it didn't forget, Tokens and
+// all. Unchanged subtrees are shared between the old tree and the new one. Where a call stopped, where it was
+// called from and which call read each token are all kept relative to the token they're stored at, so the
+// memo after an edit is right as soon as it's moved along with the tokens, without looking at any of it.
+// Lines are fixed up lazily: each call remembers the line its first token was on, and reusing a subtree after
+// an edit added or removed lines above it copies it with its operators on their new lines, which is still
+// far cheaper than scanning and parsing it again.
+//
+// The source is kept in a GapBuffer, so typing in one place doesn't copy it. Apart from copying the token and
+// memo arrays when the number of tokens changes, an edit costs time in proportion to the text re-scanned, the
+// nodes rebuilt, which are the ones around the edit and their ancestors, and the reused subtrees that moved
+// to new lines. A syntax or scanning error makes the next edit start over from scratch, so its errors are
+// reported again
+class IncrementalParser {
+    private final ErrorReporter reporter;
+
+    private final GapBuffer source;
+    private TokenBuffer tokens;
+    private Expression tree;
+    // Every re-scan of the buffer interns its literals here. Starting over from scratch empties it
+    private ConstantPool constants;
+    // Whether the last parse had errors, so the memo can't be trusted
+    private boolean broken;
+
+    // The memo, indexed by the token a call started at. "nodes" is null for tokens no remembered call starts at.
+    // "lengths" is how many tokens a call read, "lines" the line its first token was on when its subtree was
+    // made, and "parents" how far back the call it was made from starts, or 0 for the outermost one. "owners"
+    // is how far back the start of the innermost call that consumed each token is, or -1 if none did.
+    // Together parents and owners find every call that read a token
+    private Expression[] nodes;
+    private int[] precedences;
+    private int[] lengths;
+    private int[] lines;
+    private int[] parents;
+    private int[] owners;
+
+    IncrementalParser(String source, ErrorReporter reporter) {
+        this.reporter = reporter;
+        this.source = new GapBuffer(source);
+        parseAll();
+    }
+
+    // The tree for the source as it is now, or null if scanning or parsing it reported any errors
+    Expression tree() {
+        return tree;
+    }
+
+    // The tokens of the source as it is now. Their lexemes are read from the buffer, so they're only good
+    // until the next edit
+    TokenBuffer tokens() {
+        return tokens;
+    }
+
+    String source() {
+        return source.toString();
+    }
+
+    // Replaces "removed" chars at "offset" with "inserted", and returns the new tree, or null if it has errors
+    // like tree()
+    Expression edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+            throw new IndexOutOfBoundsException("Edit of " + removed + " chars at " + offset + " is outside the source.");
+        }
+
+        if (broken) {
+            source.replace(offset, removed, inserted);
+            parseAll();
+            return tree;
+        }
+
+        int lineDelta = lines(inserted, 0, inserted.length()) - lines(source, offset, offset + removed);
+        int startDelta = inserted.length() - removed;
+        int editEnd = offset + inserted.length();
+
+        // Re-scans from a token boundary before the edit, up to the first old token that starts after it
+        int from = tokens.tokenBefore(offset);
+        int start = 0;
+        int line = 1;
+        if (from >= 0) {
+            from = Math.max(from - 1, 0);
+            start = tokens.start(from);
+            // A token's line is where it ends, which is later than where it starts for a string over many lines
+            line = tokens.line(from) - lines(source, start, start + tokens.length(from));
+        } else {
+            from = 0;
+        }
+        source.replace(offset, removed, inserted);
+
+        TokenBuffer old = tokens;
+        int errors = reporter.errorCount;
+        Scanner scanner = new Scanner(source, reporter, constants);
+        TokenBuffer scanned = scanner.scanFrom(start, line,
+                position -> position >= editEnd && old.tokenAt(position - startDelta) >= 0);
+        boolean reachedEnd = scanned.size() > 0 && scanned.type(scanned.size() - 1) == TokenType.EOF;
+        int to = reachedEnd ? old.size() : old.tokenAt(scanner.position() - startDelta);
+
+        tokens = old.splice(source, from, to, scanned, startDelta, lineDelta);
+        forget(from, to, scanned.size());
+
+        parse();
+        rejectIfErrors(errors);
+        return tree;
+    }
+
+    private void parseAll() {
+        int errors = reporter.errorCount;
+        constants = new ConstantPool();
+        tokens = new Scanner(source, reporter, constants).scanTokens();
+        int size = tokens.size();
+        nodes = new Expression[size];
+        precedences = new int[size];
+        lengths = new int[size];
+        lines = new int[size];
+        parents = new int[size];
+        owners = new int[size];
+        Arrays.fill(owners, -1);
+
+        broken = false;
+        parse();
+        rejectIfErrors(errors);
+    }
+
+    // Drops the tree if scanning or parsing reported anything since the count was "errors". PrattParser
+    // recovers from some errors and still returns a tree, like "1 + 2 @", which would run code that
+    // Session.parse() turns down
+    private void rejectIfErrors(int errors) {
+        if (reporter.errorCount > errors) {
+            tree = null;
+            broken = true;
+        }
+    }
+
+    private void parse() {
+        MemoParser parser = new MemoParser(tokens, reporter);
+        tree = parser.parse();
+        if (tree == null) {
+            broken = true;
+        }
+    }
+
+    // Forgets every call that read the old tokens [from, to), and moves the memo along to match the new tokens,
+    // where "added" tokens replaced those.
+    //
+    // The calls that started at those tokens go with them. A call that started before them and read any of
+    // them also read the token before "from", so it's on that token's chain of owners. A call made from one
+    // of the forgotten calls is still right if it started at "to" or after, since none of its tokens changed.
+    // Its link to the forgotten call is only followed if the next parse doesn't reuse it, and then at worst
+    // it forgets more than it has to: links always point back, so a chain always ends
+    private void forget(int from, int to, int added) {
+        if (from > 0) {
+            for (int call = owner(from - 1); call >= 0; call = parent(call)) {
+                nodes[call] = null;
+            }
+        }
+
+        int moved = from + added;
+        if (moved != to) {
+            int size = from + added + (nodes.length - to);
+            nodes = splice(nodes, new Expression[size], from, to, added);
+            precedences = splice(precedences, new int[size], from, to, added);
+            lengths = splice(lengths, new int[size], from, to, added);
+            lines = splice(lines, new int[size], from, to, added);
+            parents = splice(parents, new int[size], from, to, added);
+            owners = splice(owners, new int[size], from, to, added);
+        }
+        Arrays.fill(nodes, from, moved, null);
+        Arrays.fill(owners, from, moved, -1);
+    }
+
+    // The call the one starting at "call" was made from, or -1
+    private int parent(int call) {
+        return parents[call] == 0 ? -1 : call - parents[call];
+    }
+
+    // The innermost call that consumed "token", or -1
+    private int owner(int token) {
+        return owners[token] < 0 ? -1 : token - owners[token];
+    }
+
+    // Copies "from" into "into", leaving "added" empty slots where [start, end) was
+    private static Expression[] splice(Expression[] from, Expression[] into, int start, int end, int added) {
+        System.arraycopy(from, 0, into, 0, start);
+        System.arraycopy(from, end, into, start + added, from.length - end);
+        return into;
+    }
+
+    private static int[] splice(int[] from, int[] into, int start, int end, int added) {
+        System.arraycopy(from, 0, into, 0, start);
+        System.arraycopy(from, end, into, start + added, from.length - end);
+        return into;
+    }
+
+    // How many line breaks text[from, to) has
+    private static int lines(CharSequence text, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    // A copy of a subtree with every operator "shift" lines further down. Literals have no line, so they and
+    // groupings of them are shared with the original
+    private static Expression relocate(Expression expression, int shift) {
+        switch (expression.kind) {
+            case Expression.BINARY:
+                Expression.Binary binary = (Expression.Binary)expression;
+                return new Expression.Binary(relocate(binary.left, shift), relocate(binary.operator, shift),
+                        relocate(binary.right, shift));
+            case Expression.GROUPING:
+                Expression.Grouping grouping = (Expression.Grouping)expression;
+                Expression inner = relocate(grouping.expression, shift);
+                return inner == grouping.expression ? grouping : new Expression.Grouping(inner);
+            case Expression.UNARY:
+                Expression.Unary unary = (Expression.Unary)expression;
+                return new Expression.Unary(relocate(unary.operator, shift), relocate(unary.right, shift));
+            default:
+                return expression;
+        }
+    }
+
+    private static Token relocate(Token token, int shift) {
+        return new Token(token.type, token.lexeme, token.literal, token.line + shift);
+    }
+
+    // Fills in and reads the memo as it parses. Keeps a stack of the calls in progress, so it knows which call
+    // consumed each token and which call each one was made from
+    private class MemoParser extends PrattParser {
+        private int[] calls = new int[16];
+        private int depth = 0;
+
+        MemoParser(TokenBuffer tokens, ErrorReporter reporter) {
+            super(tokens, reporter);
+        }
+
+        @Override
+        Expression reuse(int start, int precedence) {
+            Expression node = nodes[start];
+            if (node != null && precedences[start] == precedence) {
+                int shift = tokens.line(start) - lines[start];
+                if (shift != 0) {
+                    // Its tokens all moved the same number of lines, or an edit among them would have forgotten it
+                    node = relocate(node, shift);
+                    nodes[start] = node;
+                    lines[start] += shift;
+                }
+                parents[start] = depth == 0 ? 0 : start - calls[depth - 1];
+                seek(start + lengths[start]);
+                return node;
+            }
+
+            // Nothing else starts here now
+            nodes[start] = null;
+            if (depth == calls.length) {
+                calls = Arrays.copyOf(calls, depth * 2);
+            }
+            calls[depth++] = start;
+            return null;
+        }
+
+        @Override
+        Expression parsed(int start, int precedence, Expression expression) {
+            depth--;
+            nodes[start] = expression;
+            precedences[start] = precedence;
+            lengths[start] = position() - start;
+            lines[start] = tokens.line(start);
+            parents[start] = depth == 0 ? 0 : start - calls[depth - 1];
+            return expression;
+        }
+
+        @Override
+        void advance() {
+            int token = position();
+            if (depth > 0 && token < owners.length) {
+                int call = calls[depth - 1];
+                owners[token] = token - call;
+                if (token != call) {
+                    // Operators and parentheses never start a call, so anything remembered here is stale
+                    nodes[token] = null;
+                }
+            }
+            super.advance();
+        }
+    }
+}
@@ -1,6 +1,35 @@
 package lox;
 
-class Interpreter extends Expression.Visitor<Object> {
+import java.io.PrintStream;
+
+// Walks the tree by switching on each node's kind (see ExpressionSwitch) rather than through accept(),
+// so the visit calls stay monomorphic however many other visitors the program uses. interpret() does the
+// same through UnboxedEvaluator
+class Interpreter extends ExpressionSwitch<Object> {
+    private final UnboxedEvaluator unboxed = new UnboxedEvaluator();
+
+    // Where interpret() prints values and runtime errors
+    private final PrintStream out;
+    private final ErrorReporter reporter;
+
+    Interpreter() {
+        this(System.out, new ErrorReporter(System.err));
+    }
+
+    Interpreter(PrintStream out, ErrorReporter reporter) {
+        this.out = out;
+        this.reporter = reporter;
+    }
+
+    // Evaluates an expression and prints its value, or reports the runtime error that stopped it
+    void interpret(Expression expression) {
+        try {
+            Object value = evaluateUnboxed(expression);
+            out.println(stringify(value));
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
 
     // Returns a runtime value from a literal
     @Override
@@ -11,15 +40,29 @@ class Interpreter extends Expression.Visitor<Object> {
     // Recursively evaluates the expression inside a grouping
     @Override
     public Object visitGroupingExpression(Expression.Grouping expression) {
-        return evaluate(expression.expression);
+        return dispatch(expression.expression);
     }
 
+    // The visit methods call dispatch() on their operands instead of evaluate(), so strings stay Ropes
+    // until the whole expression is done
     @Override
     public Object visitUnaryExpression(Expression.Unary expression) {
-        Object right = evaluate(expression.right);
+        return unary(expression.operator, dispatch(expression.right));
+    }
 
-        switch(expression.operator.type) {
-            case MINUS: return -(double)right;
+    @Override
+    public Object visitBinaryExpression(Expression.Binary expression) {
+        Object left = dispatch(expression.left);
+        Object right = dispatch(expression.right);
+        return binary(expression.operator, left, right);
+    }
+
+    // Applies a unary operator to an operand that has already been evaluated
+    static Object unary(Token operator, Object right) {
+        switch(operator.type) {
+            case MINUS:
+                checkNumberOperand(operator, right);
+                return -(double)right;
             case BANG: return !isTruthy(right);
         }
 
@@ -27,40 +70,94 @@ class Interpreter extends Expression.Visitor<Object> {
         return null;
     }
 
-    @Override
-    public Object visitBinaryExpression(Expression.Binary expression) {
-        Object left = evaluate(expression.left);
-        Object right = evaluate(expression.right);
-
-        switch(expression.operator.type) {
-            case MINUS: return (double)left - (double)right;
+    // Applies a binary operator to operands that have already been evaluated, left first.
+    // Concatenating strings returns a Rope, which callers must flatten before the value leaves them
+    static Object binary(Token operator, Object left, Object right) {
+        switch(operator.type) {
+            case MINUS:
+                checkNumberOperands(operator, left, right);
+                return (double)left - (double)right;
             case PLUS:
                 if (left instanceof Double && right instanceof Double) {
                     return (double)left + (double)right;
                 }
-                if (left instanceof String && right instanceof String) {
-                    return (String)left + (String)right;
+                if (Rope.isString(left) && Rope.isString(right)) {
+                    return Rope.concat(left, right);
                 }
-            case SLASH: return (double)left / (double)right;
-            case STAR: return (double)left * (double)right;
-            case GREATER: return (double)left > (double)right;
-            case GREATER_EQUAL: return (double)left >= (double)right;
-            case LESS: return (double)left < (double)right;
-            case LESS_EQUAL: return (double)left <= (double)right;
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+            case SLASH:
+                checkNumberOperands(operator, left, right);
+                return (double)left / (double)right;
+            case STAR:
+                checkNumberOperands(operator, left, right);
+                return (double)left * (double)right;
+            case GREATER:
+                checkNumberOperands(operator, left, right);
+                return (double)left > (double)right;
+            case GREATER_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return (double)left >= (double)right;
+            case LESS:
+                checkNumberOperands(operator, left, right);
+                return (double)left < (double)right;
+            case LESS_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return (double)left <= (double)right;
             case BANG_EQUAL: return !isEqual(left, right);
             case EQUAL_EQUAL: return isEqual(left, right);
 
         }
+
+        // Unreachable, same as in unary
+        return null;
+    }
+
+    // Sends a given expression to the interpreter's visit method for its kind, and flattens the result
+    Object evaluate(Expression expression) {
+        return Rope.flatten(dispatch(expression));
+    }
+
+    // Evaluates an expression to the same value as evaluate(), but keeps every intermediate number
+    // and boolean unboxed, so only the final value can allocate
+    Object evaluateUnboxed(Expression expression) {
+        unboxed.evaluate(expression);
+        return unboxed.result();
+    }
+
+    // Evaluates an expression that produces a number, without boxing anything at all
+    double evaluateDouble(Expression expression) {
+        unboxed.evaluate(expression);
+        if (!unboxed.isNumber) {
+            throw new IllegalArgumentException("Expression did not evaluate to a number.");
+        }
+        return unboxed.number;
     }
 
-    // Sends a given expression back to interpreter's visitor implementation
-    private Object evaluate(Expression expression) {
-        return expression.accept(this);
+    // Evaluates an expression for its truthiness, without boxing anything at all
+    boolean evaluateBoolean(Expression expression) {
+        unboxed.evaluate(expression);
+        return unboxed.isTruthy();
+    }
+
+    // Makes sure the operand of a unary operator is a number before it's cast to one
+    private static void checkNumberOperand(Token operator, Object operand) {
+        if (operand instanceof Double) {
+            return;
+        }
+        throw new RuntimeError(operator, "Operand must be a number.");
+    }
+
+    // Makes sure both operands of a binary operator are numbers before they're cast to them
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            return;
+        }
+        throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
     // Evaluates "truthiness" of an object
     // In Lox, nil and false are false, and EVERYTHING ELSE is true
-    private Boolean isTruthy(Object object) {
+    private static Boolean isTruthy(Object object) {
         if (object ==  null) {
             return false;
         }
@@ -72,8 +169,9 @@ class Interpreter extends Expression.Visitor<Object> {
         return true;
     }
 
-    private Boolean isEqual(Object a, Object b) {
-        if(a == null  && b == null) {
+    private static Boolean isEqual(Object a, Object b) {
+        // Also covers nil == nil, and literals the ConstantPool made into one object
+        if(a == b) {
             return true;
         }
 
@@ -81,6 +179,23 @@ class Interpreter extends Expression.Visitor<Object> {
             return false;
         }
 
-        return a.equals(b);
+        return Rope.flatten(a).equals(Rope.flatten(b));
+    }
+
+    // Converts a runtime value to the text the user sees, printing whole numbers without the ".0"
+    static String stringify(Object object) {
+        if (object == null) {
+            return "nil";
+        }
+
+        if (object instanceof Double) {
+            String text = object.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return object.toString();
     }
 }
@@ -0,0 +1,282 @@
+package lox;
+
+// Compiles an Expression into a JVM class implementing CompiledExpression, so HotSpot can compile
+// the whole tree into native code and inline it into whatever calls it.
+// Every leaf of an expression is a literal, so the type of every node is known before it runs.
+// That lets each node compile to the plain JVM instructions for its types: numbers stay unboxed doubles
+// on the JVM's operand stack, booleans are ints, and nil takes up no stack space at all.
+// A tree with a node whose operands have the wrong types would throw a RuntimeError, and a tree too big
+// for one JVM method can't be compiled at all. Both are left to the Interpreter instead, so
+// every CompiledExpression behaves exactly like Interpreter.evaluate
+class JvmCompiler implements Expression.Visitor<JvmCompiler.Type> {
+    // The static type of an expression, and how many stack slots its value takes up
+    enum Type {
+        NIL(0), BOOLEAN(1), NUMBER(2), STRING(1);
+
+        final int slots;
+
+        Type(int slots) {
+            this.slots = slots;
+        }
+    }
+
+    // Thrown to give up on a tree that has to be left to the Interpreter. It never escapes compile()
+    private static class Unsupported extends RuntimeException {
+        Unsupported() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final Unsupported UNSUPPORTED = new Unsupported();
+
+    private static final String CLASS_NAME = "lox/GeneratedExpression";
+    private static final String INTERFACE_NAME = "lox/CompiledExpression";
+
+    private final ClassFile classFile = new ClassFile();
+
+    private JvmCompiler() {
+    }
+
+    // Compiles an expression if it can, and wraps it in an Interpreter otherwise
+    static CompiledExpression compile(Expression expression) {
+        CompiledExpression compiled = tryCompile(expression);
+        if (compiled != null) {
+            return compiled;
+        }
+
+        Interpreter interpreter = new Interpreter();
+        return () -> interpreter.evaluate(expression);
+    }
+
+    // Compiles an expression, or returns null if it has to be left to the Interpreter
+    static CompiledExpression tryCompile(Expression expression) {
+        byte[] bytes;
+        try {
+            bytes = new JvmCompiler().generate(expression);
+        } catch (Unsupported | ClassFile.TooLargeException error) {
+            return null;
+        }
+
+        try {
+            Class<?> generated = new Loader().define(bytes);
+            return (CompiledExpression)generated.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException error) {
+            throw new IllegalStateException("Could not load a compiled expression.", error);
+        }
+    }
+
+    private byte[] generate(Expression expression) throws ClassFile.TooLargeException {
+        Type type = expression.accept(this);
+        box(type);
+        classFile.emit(ClassFile.ARETURN, -1);
+        return classFile.toByteArray(CLASS_NAME, INTERFACE_NAME, "evaluate", "()Ljava/lang/Object;");
+    }
+
+    @Override
+    public Type visitBinaryExpression(Expression.Binary expression) {
+        Type left = expression.left.accept(this);
+        Type right = expression.right.accept(this);
+
+        switch (expression.operator.type) {
+            case PLUS:
+                if (left == Type.STRING && right == Type.STRING) {
+                    invoke(ClassFile.INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;", -1);
+                    return Type.STRING;
+                }
+                return arithmetic(ClassFile.DADD, left, right);
+            case MINUS: return arithmetic(ClassFile.DSUB, left, right);
+            case STAR: return arithmetic(ClassFile.DMUL, left, right);
+            case SLASH: return arithmetic(ClassFile.DDIV, left, right);
+
+            // A NaN operand makes every comparison false. dcmpl turns NaN into -1 and dcmpg into 1,
+            // whichever makes the branch that skips to false get taken
+            case GREATER: return comparison(ClassFile.DCMPL, ClassFile.IFLE, left, right);
+            case GREATER_EQUAL: return comparison(ClassFile.DCMPL, ClassFile.IFLT, left, right);
+            case LESS: return comparison(ClassFile.DCMPG, ClassFile.IFGE, left, right);
+            case LESS_EQUAL: return comparison(ClassFile.DCMPG, ClassFile.IFGT, left, right);
+
+            case EQUAL_EQUAL:
+                equality(left, right);
+                return Type.BOOLEAN;
+            case BANG_EQUAL:
+                equality(left, right);
+                not();
+                return Type.BOOLEAN;
+        }
+
+        // Unreachable
+        throw UNSUPPORTED;
+    }
+
+    @Override
+    public Type visitGroupingExpression(Expression.Grouping expression) {
+        return expression.expression.accept(this);
+    }
+
+    @Override
+    public Type visitLiteralExpression(Expression.Literal expression) {
+        Object value = expression.value;
+
+        if (value == null) {
+            return Type.NIL;
+        }
+        if (value instanceof Boolean) {
+            classFile.emit((Boolean)value ? ClassFile.ICONST_1 : ClassFile.ICONST_0, 1);
+            return Type.BOOLEAN;
+        }
+        if (value instanceof Double) {
+            // dconst_0 pushes 0, never -0
+            double number = (Double)value;
+            if (Double.doubleToRawLongBits(number) == 0) {
+                classFile.emit(ClassFile.DCONST_0, 2);
+            } else if (number == 1) {
+                classFile.emit(ClassFile.DCONST_1, 2);
+            } else {
+                constant(value);
+            }
+            return Type.NUMBER;
+        }
+        constant(value);
+        return Type.STRING;
+    }
+
+    @Override
+    public Type visitUnaryExpression(Expression.Unary expression) {
+        Type right = expression.right.accept(this);
+
+        if (expression.operator.type == TokenType.MINUS) {
+            if (right != Type.NUMBER) {
+                throw UNSUPPORTED;
+            }
+            classFile.emit(ClassFile.DNEG, 0);
+            return Type.NUMBER;
+        }
+
+        // "!" is true for nil and false, and false for everything else
+        switch (right) {
+            case NIL:
+                classFile.emit(ClassFile.ICONST_1, 1);
+                break;
+            case BOOLEAN:
+                not();
+                break;
+            default:
+                pop(right);
+                classFile.emit(ClassFile.ICONST_0, 1);
+                break;
+        }
+        return Type.BOOLEAN;
+    }
+
+    private Type arithmetic(int opcode, Type left, Type right) {
+        if (left != Type.NUMBER || right != Type.NUMBER) {
+            throw UNSUPPORTED;
+        }
+        classFile.emit(opcode, -2);
+        return Type.NUMBER;
+    }
+
+    private Type comparison(int compareOpcode, int falseUnless, Type left, Type right) {
+        if (left != Type.NUMBER || right != Type.NUMBER) {
+            throw UNSUPPORTED;
+        }
+        classFile.emit(compareOpcode, -3);
+        classFile.emitBooleanUnless(falseUnless, 1);
+        return Type.BOOLEAN;
+    }
+
+    // Same rules as Interpreter.isEqual: values of different types are never equal, and numbers are compared
+    // by their bits like Double.equals does, so NaN equals itself and 0 doesn't equal -0
+    private void equality(Type left, Type right) {
+        if (left != right) {
+            pop(right);
+            pop(left);
+            classFile.emit(ClassFile.ICONST_0, 1);
+            return;
+        }
+
+        switch (left) {
+            case NIL:
+                classFile.emit(ClassFile.ICONST_1, 1);
+                break;
+            case BOOLEAN:
+                classFile.emitBooleanUnless(ClassFile.IF_ICMPNE, 2);
+                break;
+            case NUMBER:
+                // The right operand is on top, so it's converted first, then swapped under the left one
+                invoke(ClassFile.INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", 0);
+                swapWide();
+                invoke(ClassFile.INVOKESTATIC, "java/lang/Double", "doubleToLongBits", "(D)J", 0);
+                classFile.emit(ClassFile.LCMP, -3);
+                classFile.emitBooleanUnless(ClassFile.IFNE, 1);
+                break;
+            case STRING:
+                invoke(ClassFile.INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", -1);
+                break;
+        }
+    }
+
+    // Swaps the two two-slot values on top of the stack. The JVM's swap only works on one-slot values,
+    // so this copies the top one below the other and then drops the original
+    private void swapWide() {
+        classFile.emit(ClassFile.DUP2_X2, 2);
+        classFile.emit(ClassFile.POP2, -2);
+    }
+
+    private void not() {
+        classFile.emit(ClassFile.ICONST_1, 1);
+        classFile.emit(ClassFile.IXOR, -1);
+    }
+
+    private void pop(Type type) {
+        if (type.slots == 1) {
+            classFile.emit(ClassFile.POP, -1);
+        } else if (type.slots == 2) {
+            classFile.emit(ClassFile.POP2, -2);
+        }
+    }
+
+    // Turns the value on the stack into the object the Interpreter would have returned
+    private void box(Type type) {
+        switch (type) {
+            case NIL:
+                classFile.emit(ClassFile.ACONST_NULL, 1);
+                break;
+            case BOOLEAN:
+                invoke(ClassFile.INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;", 0);
+                break;
+            case NUMBER:
+                invoke(ClassFile.INVOKESTATIC, "java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", -1);
+                break;
+            case STRING:
+                break;
+        }
+    }
+
+    private void constant(Object value) {
+        try {
+            classFile.emitConstant(value);
+        } catch (ClassFile.TooLargeException error) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private void invoke(int opcode, String owner, String name, String descriptor, int effect) {
+        try {
+            classFile.emit(opcode, classFile.methodref(owner, name, descriptor), effect);
+        } catch (ClassFile.TooLargeException error) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    // Every compiled expression gets its own class loader, so its class can be unloaded once it's unreachable
+    private static class Loader extends ClassLoader {
+        Loader() {
+            super(JvmCompiler.class.getClassLoader());
+        }
+
+        Class<?> define(byte[] bytes) {
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -1,38 +1,317 @@
 package lox;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.nio.charset.Charset;
+import java.io.PrintStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class Lox {
 
-    public static boolean hadError = false;
+    // Runs everything typed at the prompt or read from a script file, printing to the console
+    private static final Session session = new Session(System.out, System.err);
+
+    // How much --cache keeps: enough for a long REPL session or a large batch, without ever holding much heap
+    private static final int CACHE_ENTRIES = 1024;
+    private static final long CACHE_BYTES = 64L * 1024 * 1024;
+
+    // How often --sample looks at what's running, and how many nodes the --profile report lists
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int PROFILE_REPORT_NODES = 20;
+
+    // How much --lines reads and writes at a time
+    private static final int STREAM_BUFFER_BYTES = 1 << 16;
 
     public static void main(String[] args) throws IOException{
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64); //using the conventions defined in the UNIX “sysexits.h” header
+        List<String> paths = new ArrayList<>();
+        String batch = null;
+        boolean compile = false;
+        boolean lines = false;
+        String profile = null;
+        boolean sample = false;
+        int serve = -1;
+        int connect = -1;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--vm")) {
+                session.useVM = true;
+            }
+            else if (arg.equals("--jvm")) {
+                session.useJVM = true;
+            }
+            else if (arg.equals("--specialize")) {
+                session.specialize = true;
+            }
+            else if (arg.equals("--arena")) {
+                session.arena = true;
+            }
+            else if (arg.equals("--optimize")) {
+                session.optimize = true;
+            }
+            else if (arg.equals("--share")) {
+                session.share = true;
+            }
+            else if (arg.equals("--shared-constants")) {
+                session.sharedConstants = true;
+            }
+            else if (arg.equals("--cache")) {
+                session.cache = new ParseCache(CACHE_ENTRIES, CACHE_BYTES);
+            }
+            else if (arg.equals("--stats")) {
+                session.stats = new Stats();
+            }
+            else if (arg.equals("--profile") && i + 1 < args.length) {
+                profile = args[++i];
+            }
+            else if (arg.equals("--sample")) {
+                sample = true;
+            }
+            else if (arg.equals("--serve") && i + 1 < args.length) {
+                serve = port(args[++i]);
+            }
+            else if (arg.equals("--connect") && i + 1 < args.length) {
+                connect = port(args[++i]);
+            }
+            else if (arg.equals("--lines")) {
+                lines = true;
+            }
+            else if (arg.equals("--compile")) {
+                compile = true;
+            }
+            else if (arg.equals("--batch") && i + 1 < args.length) {
+                batch = args[++i];
+            }
+            else if (arg.startsWith("--")) {
+                usage();
+            }
+            else {
+                paths.add(arg);
+            }
+        }
+
+        int backends = (session.useVM ? 1 : 0) + (session.useJVM ? 1 : 0) + (session.specialize ? 1 : 0)
+                + (session.arena ? 1 : 0);
+        if (backends > 1) {
+            usage();
+        }
+        // An arena is never a tree, so there's nothing for these to work on
+        if (session.arena && (session.optimize || session.share || session.cache != null)) {
+            usage();
+        }
+        // Only the tree-walking interpreter can be profiled
+        if (profile != null && backends > 0 || sample && profile == null) {
+            usage();
+        }
+
+        if (session.stats != null) {
+            if (session.cache != null) {
+                session.stats.watch(session.cache);
+            }
+            startStats(session.stats);
+        }
+        if (profile != null) {
+            session.profiler = sample ? new Profiler(true, SAMPLE_INTERVAL_NANOS) : new Profiler();
+            startProfile(session.profiler, Paths.get(profile));
+        }
+
+        if (lines) {
+            if (paths.size() > 1 || connect >= 0 || serve >= 0 || compile || batch != null) {
+                usage();
+            }
+            runLines(paths.isEmpty() ? null : paths.get(0));
+        }
+        else if (connect >= 0) {
+            if (paths.size() > 1 || serve >= 0 || compile || batch != null) {
+                usage();
+            }
+            connect(connect, paths.isEmpty() ? null : paths.get(0));
+        }
+        else if (serve >= 0) {
+            if (!paths.isEmpty() || compile || batch != null) {
+                usage();
+            }
+            new Server(session).serve(serve);
+        }
+        else if (compile) {
+            if (paths.isEmpty() || batch != null) {
+                usage();
+            }
+            compileFiles(paths);
+        }
+        else if (batch != null) {
+            if (!paths.isEmpty()) {
+                usage();
+            }
+            runBatch(batch);
+        }
+        else if (paths.size() > 1) {
+            usage();
         }
-        else if (args.length == 1) {
-            runFile(args[0]);
+        else if (paths.size() == 1) {
+            runFile(paths.get(0));
         }
         else {
             runPrompt();
         }
     }
 
-    // Gets lox source file from a given path and executes it
+    private static void usage() {
+        System.out.println("Usage: jlox [--vm | --jvm | --specialize | --arena] [--optimize] [--share] [--cache] [--shared-constants] [--stats] [--profile collapsed-file [--sample]] [script | --batch directory-or-manifest]");
+        System.out.println("       jlox [--stats] --compile script...");
+        System.out.println("       jlox [options] --lines [file]");
+        System.out.println("       jlox [options] --serve port");
+        System.out.println("       jlox --connect port [script]");
+        System.exit(64); //using the conventions defined in the UNIX “sysexits.h” header
+    }
+
+    // Publishes the counters over JMX and prints them when the program exits, however it exits. That includes
+    // System.exit() after an error and control-C at the prompt
+    private static void startStats(Stats stats) {
+        stats.register();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> stats.print(System.err)));
+    }
+
+    // Prints the hottest nodes and writes the collapsed stacks when the program exits, however it exits
+    private static void startProfile(Profiler profiler, Path collapsed) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            profiler.report(System.err, PROFILE_REPORT_NODES);
+            try {
+                profiler.writeCollapsed(collapsed);
+            } catch (IOException error) {
+                System.err.println("Could not write " + collapsed + ": " + error.getMessage());
+            }
+        }));
+    }
+
+    private static int port(String text) {
+        try {
+            int port = Integer.parseInt(text);
+            if (port >= 0 && port <= 65535) {
+                return port;
+            }
+        } catch (NumberFormatException error) {
+            // Falls through to usage()
+        }
+        usage();
+        return -1;
+    }
+
+    // Sends a script, or everything on standard input if there's no script, to a server started with --serve,
+    // and exits with the status it ran with
+    public static void connect(int port, String path) throws IOException {
+        byte[] source;
+        if (path != null) {
+            source = Files.readAllBytes(Paths.get(path));
+        } else {
+            ByteArrayOutputStream input = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int read; (read = System.in.read(buffer)) != -1;) {
+                input.write(buffer, 0, read);
+            }
+            source = input.toByteArray();
+        }
+
+        int status = Server.request(port, source, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    // Gets lox source file from a given path and executes it. A .loxc file made by --compile is loaded
+    // instead of being scanned and parsed
     public static void runFile(String path) throws IOException {
-        byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        Path file = Paths.get(path);
+        if (path.endsWith(".loxc")) {
+            try {
+                session.run(AstFile.read(file));
+            } catch (AstFile.FormatException error) {
+                System.err.println("Could not load " + path + ": " + error.getMessage());
+                System.exit(65);
+            }
+        }
+        else {
+            session.run(map(file));
+        }
+
+        if (session.reporter.hadError) {
+            System.exit(65);
+        }
+        if (session.reporter.hadRuntimeError) {
+            System.exit(70);
+        }
+    }
+
+    // Parses scripts without running them, and saves each one's tree next to it as a .loxc file
+    public static void compileFiles(List<String> paths) throws IOException {
+        for (String path : paths) {
+            Path script = Paths.get(path);
+            Expression expression = session.parse(map(script));
+            if (expression != null) {
+                AstFile.write(expression, AstFile.compiledPath(script));
+            }
+        }
+
+        if (session.reporter.hadError) {
+            System.exit(65);
+        }
+    }
+
+    // Runs every script in a directory, or listed in a manifest file, in parallel. See Batch
+    public static void runBatch(String path) throws IOException {
+        Batch batch = new Batch(session);
+        int status = batch.run(Batch.scripts(Paths.get(path)));
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    // Runs every line of a file, or of standard input if there's no file, as its own expression, without a
+    // prompt. Lines are read a buffer at a time and results are written a buffer at a time, so memory use
+    // doesn't grow with the input. Errors name the line they were on. Exits with the status runFile would
+    // have used for the worst error, once every line has run
+    public static void runLines(String path) throws IOException {
+        InputStream input = path == null ? System.in : new FileInputStream(path);
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), STREAM_BUFFER_BYTES), false, "UTF-8");
+        PrintStream err = new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.err), STREAM_BUFFER_BYTES), false, "UTF-8");
+        Session lines = session.fork(out, err);
+
+        boolean hadError = false;
+        boolean hadRuntimeError = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), STREAM_BUFFER_BYTES)) {
+            int number = 0;
+            for (String line; (line = reader.readLine()) != null;) {
+                lines.reporter.lineOffset = number++;
+                lines.run(line);
+                hadError |= lines.reporter.hadError;
+                hadRuntimeError |= lines.reporter.hadRuntimeError;
+                lines.reporter.reset();
+            }
+        } finally {
+            out.flush();
+            err.flush();
+        }
 
         if (hadError) {
             System.exit(65);
         }
+        if (hadRuntimeError) {
+            System.exit(70);
+        }
     }
 
     // Prompts user to write source code and executes it as it's written
@@ -44,42 +323,20 @@ public class Lox {
         // Prompts user for a new line of code and executes it, FOREVER (or until user hits control-C)
         for(;;) {
             System.out.println("> ");
-            run(reader.readLine());
+            session.run(reader.readLine());
             // Avoids killing the user's entire session because they made a typo
-            hadError = false;
-        }
-    }
-
-    private static void run(String source) {
-        Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
-
-        Parser parser = new Parser(tokens);
-        Expression expression = parser.parse();
-
-        if (hadError) {
-            return;
+            session.reporter.reset();
         }
-
-        System.out.println(new ASTPrinter().print(expression));
-    }
-
-    // Non-private method to give access to error reporting method, "report"
-    static void error(int line, String message) {
-        report(line, "", message);
-    }
-
-    // Reports syntax errors and their location to the user, and remembers that there was an error
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error"+ where + ": " + message);
-        hadError = true;
     }
 
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
-        } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+    // Memory-maps a source file so it can be scanned as UTF-8 bytes, without ever copying it onto the heap
+    static Utf8Source map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(path + " is too large to run (over 2GB).");
+            }
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Utf8Source(bytes);
         }
     }
 }
@@ -0,0 +1,487 @@
+package lox;
+
+// A tree built from an Expression for evaluating it over and over. Its nodes rewrite themselves once they
+// have seen the types of their operands: an uninitialized "+" that adds two numbers replaces itself in its
+// parent with an Add node, which just adds two doubles without looking at the operator or boxing anything.
+// If a specialized node ever gets operands it wasn't made for, it replaces itself with a generic node
+// that does exactly what the Interpreter does, so results and errors always match Interpreter.evaluate.
+// Nodes change as they run, so a tree must only be evaluated by one thread at a time
+abstract class Node {
+    // The node holding this one, which is asked to swap it out when it rewrites itself
+    private Node parent;
+
+    abstract Object execute();
+
+    // Returns the node's value as a double. Nodes that produce numbers override this so their parents
+    // never see a boxed Double. Throws UnexpectedResult, carrying the value, if it wasn't a number
+    double executeDouble() throws UnexpectedResult {
+        Object value = execute();
+        if (value instanceof Double) {
+            return (Double)value;
+        }
+        throw new UnexpectedResult(value);
+    }
+
+    // Thrown when a node's value wasn't of the type its parent asked for.
+    // It only happens while a tree is changing its mind about types, so it skips filling in a stack trace
+    static final class UnexpectedResult extends Exception {
+        final Object value;
+
+        UnexpectedResult(Object value) {
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    // Puts "replacement" where this node is in the tree, and returns it
+    final <T extends Node> T replace(T replacement) {
+        ((Node)replacement).parent = parent;
+        parent.replaceChild(this, replacement);
+        return replacement;
+    }
+
+    void replaceChild(Node child, Node replacement) {
+        throw new IllegalStateException(getClass().getSimpleName() + " has no children.");
+    }
+
+    final <T extends Node> T adopt(T child) {
+        ((Node)child).parent = this;
+        return child;
+    }
+
+    // Builds an uninitialized tree. Groupings are left out, since they only mattered for parsing
+    static Root build(Expression expression) {
+        return new Root(expression.accept(new Builder()));
+    }
+
+    private static class Builder implements Expression.Visitor<Node> {
+        @Override
+        public Node visitBinaryExpression(Expression.Binary expression) {
+            return new UninitializedBinary(expression.operator, expression.left.accept(this), expression.right.accept(this));
+        }
+
+        @Override
+        public Node visitGroupingExpression(Expression.Grouping expression) {
+            return expression.expression.accept(this);
+        }
+
+        @Override
+        public Node visitLiteralExpression(Expression.Literal expression) {
+            if (expression.value instanceof Double) {
+                return new NumberLiteral((Double)expression.value);
+            }
+            return new Literal(expression.value);
+        }
+
+        @Override
+        public Node visitUnaryExpression(Expression.Unary expression) {
+            return new UninitializedUnary(expression.operator, expression.right.accept(this));
+        }
+    }
+
+    // Holds the top node, so even it has a parent to be replaced in
+    static final class Root extends Node implements CompiledExpression {
+        private Node body;
+
+        Root(Node body) {
+            this.body = adopt(body);
+        }
+
+        // Flattens any Rope made by a GenericBinary or Concatenate node before it leaves the tree
+        @Override
+        public Object evaluate() {
+            return Rope.flatten(execute());
+        }
+
+        @Override
+        Object execute() {
+            return body.execute();
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            body = replacement;
+        }
+    }
+
+    static final class Literal extends Node {
+        private final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute() {
+            return value;
+        }
+    }
+
+    static final class NumberLiteral extends Node {
+        private final double value;
+        private final Double boxed;
+
+        NumberLiteral(Double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        Object execute() {
+            return boxed;
+        }
+
+        @Override
+        double executeDouble() {
+            return value;
+        }
+    }
+
+    // A unary operator and its operand. "executeWith" applies the operator to an operand that has already
+    // been evaluated, which is how a node that has just been swapped in finishes the evaluation it took over
+    abstract static class Unary extends Node {
+        final Token operator;
+        Node operand;
+
+        Unary(Token operator, Node operand) {
+            this.operator = operator;
+            this.operand = adopt(operand);
+        }
+
+        abstract Object executeWith(Object value);
+
+        @Override
+        Object execute() {
+            return executeWith(operand.execute());
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            operand = replacement;
+        }
+    }
+
+    static final class UninitializedUnary extends Unary {
+        UninitializedUnary(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object executeWith(Object value) {
+            if (operator.type == TokenType.MINUS && value instanceof Double) {
+                return replace(new Negate(operator, operand)).executeWith(value);
+            }
+            return replace(new GenericUnary(operator, operand)).executeWith(value);
+        }
+    }
+
+    static final class GenericUnary extends Unary {
+        GenericUnary(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object executeWith(Object value) {
+            return Interpreter.unary(operator, value);
+        }
+    }
+
+    static final class Negate extends Unary {
+        Negate(Token operator, Node operand) {
+            super(operator, operand);
+        }
+
+        @Override
+        Object execute() {
+            try {
+                return executeDouble();
+            } catch (UnexpectedResult result) {
+                return result.value;
+            }
+        }
+
+        @Override
+        double executeDouble() throws UnexpectedResult {
+            double value;
+            try {
+                value = operand.executeDouble();
+            } catch (UnexpectedResult result) {
+                throw new UnexpectedResult(deoptimize(result.value));
+            }
+            return -value;
+        }
+
+        @Override
+        Object executeWith(Object value) {
+            if (value instanceof Double) {
+                return -(Double)value;
+            }
+            return deoptimize(value);
+        }
+
+        private Object deoptimize(Object value) {
+            return replace(new GenericUnary(operator, operand)).executeWith(value);
+        }
+    }
+
+    // A binary operator and its operands. "executeWith" works like it does for Unary
+    abstract static class Binary extends Node {
+        final Token operator;
+        Node left;
+        Node right;
+
+        Binary(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        abstract Object executeWith(Object left, Object right);
+
+        @Override
+        Object execute() {
+            Object leftValue = left.execute();
+            return executeWith(leftValue, right.execute());
+        }
+
+        @Override
+        void replaceChild(Node child, Node replacement) {
+            if (child == left) {
+                left = replacement;
+            } else {
+                right = replacement;
+            }
+        }
+
+        // Gives up on this node's specialization for good, and finishes evaluating it the generic way
+        final Object deoptimize(Object leftValue, Object rightValue) {
+            return replace(new GenericBinary(operator, left, right)).executeWith(leftValue, rightValue);
+        }
+    }
+
+    static final class UninitializedBinary extends Binary {
+        UninitializedBinary(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            return replace(specialize(leftValue, rightValue)).executeWith(leftValue, rightValue);
+        }
+
+        // Picks the node for the operand types seen on the first evaluation
+        private Binary specialize(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                switch (operator.type) {
+                    case PLUS: return new Add(operator, left, right);
+                    case MINUS: return new Subtract(operator, left, right);
+                    case STAR: return new Multiply(operator, left, right);
+                    case SLASH: return new Divide(operator, left, right);
+                    case GREATER: return new Greater(operator, left, right);
+                    case GREATER_EQUAL: return new GreaterEqual(operator, left, right);
+                    case LESS: return new Less(operator, left, right);
+                    case LESS_EQUAL: return new LessEqual(operator, left, right);
+                }
+            }
+            if (operator.type == TokenType.PLUS && Rope.isString(leftValue) && Rope.isString(rightValue)) {
+                return new Concatenate(operator, left, right);
+            }
+            return new GenericBinary(operator, left, right);
+        }
+    }
+
+    static final class GenericBinary extends Binary {
+        GenericBinary(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            return Interpreter.binary(operator, leftValue, rightValue);
+        }
+    }
+
+    // An operator on two numbers that produces a number
+    abstract static class Arithmetic extends Binary {
+        Arithmetic(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        abstract double apply(double leftValue, double rightValue);
+
+        @Override
+        Object execute() {
+            try {
+                return executeDouble();
+            } catch (UnexpectedResult result) {
+                return result.value;
+            }
+        }
+
+        @Override
+        double executeDouble() throws UnexpectedResult {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble();
+            } catch (UnexpectedResult result) {
+                throw new UnexpectedResult(deoptimize(result.value, right.execute()));
+            }
+
+            double rightValue;
+            try {
+                rightValue = right.executeDouble();
+            } catch (UnexpectedResult result) {
+                throw new UnexpectedResult(deoptimize(leftValue, result.value));
+            }
+
+            return apply(leftValue, rightValue);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return apply((Double)leftValue, (Double)rightValue);
+            }
+            return deoptimize(leftValue, rightValue);
+        }
+    }
+
+    static final class Add extends Arithmetic {
+        Add(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double apply(double leftValue, double rightValue) {
+            return leftValue + rightValue;
+        }
+    }
+
+    static final class Subtract extends Arithmetic {
+        Subtract(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double apply(double leftValue, double rightValue) {
+            return leftValue - rightValue;
+        }
+    }
+
+    static final class Multiply extends Arithmetic {
+        Multiply(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double apply(double leftValue, double rightValue) {
+            return leftValue * rightValue;
+        }
+    }
+
+    static final class Divide extends Arithmetic {
+        Divide(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        double apply(double leftValue, double rightValue) {
+            return leftValue / rightValue;
+        }
+    }
+
+    // An operator on two numbers that produces a boolean. Booleans are never allocated, since
+    // Boolean.TRUE and Boolean.FALSE are the only two there are
+    abstract static class Comparison extends Binary {
+        Comparison(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        abstract boolean apply(double leftValue, double rightValue);
+
+        @Override
+        Object execute() {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble();
+            } catch (UnexpectedResult result) {
+                return deoptimize(result.value, right.execute());
+            }
+
+            double rightValue;
+            try {
+                rightValue = right.executeDouble();
+            } catch (UnexpectedResult result) {
+                return deoptimize(leftValue, result.value);
+            }
+
+            return apply(leftValue, rightValue);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                return apply((Double)leftValue, (Double)rightValue);
+            }
+            return deoptimize(leftValue, rightValue);
+        }
+    }
+
+    static final class Greater extends Comparison {
+        Greater(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean apply(double leftValue, double rightValue) {
+            return leftValue > rightValue;
+        }
+    }
+
+    static final class GreaterEqual extends Comparison {
+        GreaterEqual(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean apply(double leftValue, double rightValue) {
+            return leftValue >= rightValue;
+        }
+    }
+
+    static final class Less extends Comparison {
+        Less(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean apply(double leftValue, double rightValue) {
+            return leftValue < rightValue;
+        }
+    }
+
+    static final class LessEqual extends Comparison {
+        LessEqual(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        boolean apply(double leftValue, double rightValue) {
+            return leftValue <= rightValue;
+        }
+    }
+
+    static final class Concatenate extends Binary {
+        Concatenate(Token operator, Node left, Node right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        Object executeWith(Object leftValue, Object rightValue) {
+            if (Rope.isString(leftValue) && Rope.isString(rightValue)) {
+                return Rope.concat(leftValue, rightValue);
+            }
+            return deoptimize(leftValue, rightValue);
+        }
+    }
+}
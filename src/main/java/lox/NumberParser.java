@@ -0,0 +1,171 @@
+package lox;
+
+import java.math.BigInteger;
+
+// Turns the digits of a number literal into a double straight from the source, without copying them into a
+// String for Double.parseDouble. Lox numbers are only digits with an optional fraction, never a sign or an
+// exponent. Up to 19 significant digits are read into a long, and then:
+//  - a whole number that fits in a double's 53 bits is just converted,
+//  - one with a short fraction is one exact division by a power of ten (Clinger's fast path),
+//  - anything else goes through the Eisel-Lemire algorithm, which multiplies by a 128-bit approximation of the
+//    power of ten and only gives up when that approximation can't decide how to round.
+// Literals with more digits, and the rare ones Eisel-Lemire gives up on, fall back to Double.parseDouble.
+// Every path returns exactly what Double.parseDouble would
+final class NumberParser {
+    private NumberParser() {
+    }
+
+    // Every power of ten a double holds exactly
+    private static final double[] EXACT_POWERS = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // The smallest power of ten with an entry below. Even 19 digits times anything smaller is far below the
+    // smallest normal double, which Eisel-Lemire leaves to the fallback anyway
+    private static final int MIN_EXPONENT = -348;
+
+    // For each power of ten from 10^MIN_EXPONENT to 10^0, its first 128 bits, rounded down, as high and
+    // low halves. The high half always has its top bit set
+    private static final long[] POWERS_HIGH = new long[1 - MIN_EXPONENT];
+    private static final long[] POWERS_LOW = new long[1 - MIN_EXPONENT];
+
+    static {
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (int exponent = MIN_EXPONENT; exponent <= 0; exponent++) {
+            BigInteger bits;
+            if (exponent == 0) {
+                bits = BigInteger.ONE.shiftLeft(127);
+            } else {
+                // 2^(n + 127) / 10^-exponent, where 10^-exponent takes n bits, always takes exactly 128 bits
+                BigInteger divisor = BigInteger.TEN.pow(-exponent);
+                bits = BigInteger.ONE.shiftLeft(divisor.bitLength() + 127).divide(divisor);
+            }
+            POWERS_HIGH[exponent - MIN_EXPONENT] = bits.shiftRight(64).longValue();
+            POWERS_LOW[exponent - MIN_EXPONENT] = bits.and(mask).longValue();
+        }
+    }
+
+    // Parses the literal between "start" and "end", which the Scanner has already checked is digits,
+    // optionally followed by a '.' and more digits
+    static double parse(CharSequence source, int start, int end) {
+        long digits = 0;
+        int significant = 0;
+        int exponent = 0;
+        boolean fraction = false;
+
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '.') {
+                fraction = true;
+                continue;
+            }
+            if (significant == 0 && c == '0') {
+                // Leading zeros don't count, but zeros after the point still move it
+                if (fraction) {
+                    exponent--;
+                }
+                continue;
+            }
+            if (++significant > 19) {
+                return slowPath(source, start, end);
+            }
+            digits = digits * 10 + (c - '0');
+            if (fraction) {
+                exponent--;
+            }
+        }
+
+        if (digits == 0) {
+            return 0.0;
+        }
+        // 19 digits can overflow into the sign bit, so "digits" is unsigned from here on
+        if (digits >= 0 && digits <= 1L << 53) {
+            if (exponent == 0) {
+                return (double)digits;
+            }
+            if (exponent >= -22) {
+                return (double)digits / EXACT_POWERS[-exponent];
+            }
+        }
+
+        long bits = eiselLemire(digits, exponent);
+        if (bits < 0) {
+            return slowPath(source, start, end);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    private static double slowPath(CharSequence source, int start, int end) {
+        return Double.parseDouble(source.subSequence(start, end).toString());
+    }
+
+    // Returns the bits of the double nearest to digits * 10^exponent, or -1 if it can't tell which that is.
+    // "digits" is non-zero and "exponent" is at most zero
+    private static long eiselLemire(long digits, int exponent) {
+        if (exponent < MIN_EXPONENT) {
+            return -1;
+        }
+        int index = exponent - MIN_EXPONENT;
+
+        int leadingZeros = Long.numberOfLeadingZeros(digits);
+        long mantissa = digits << leadingZeros;
+        // floor(exponent * log2(10)), plus the bias and the 64 bits the product is shifted by
+        long binaryExponent = ((217706L * exponent) >> 16) + 64 + 1023 - leadingZeros;
+
+        long high = multiplyHigh(mantissa, POWERS_HIGH[index]);
+        long low = mantissa * POWERS_HIGH[index];
+
+        // The truncated power might have lost a carry into the bits that decide rounding, so bring in its low half
+        if ((high & 0x1FF) == 0x1FF && Long.compareUnsigned(low + mantissa, mantissa) < 0) {
+            long lowHigh = multiplyHigh(mantissa, POWERS_LOW[index]);
+            long lowLow = mantissa * POWERS_LOW[index];
+            long mergedHigh = high;
+            long mergedLow = low + lowHigh;
+            if (Long.compareUnsigned(mergedLow, low) < 0) {
+                mergedHigh++;
+            }
+            if ((mergedHigh & 0x1FF) == 0x1FF && mergedLow == -1 && Long.compareUnsigned(lowLow + mantissa, mantissa) < 0) {
+                return -1;
+            }
+            high = mergedHigh;
+            low = mergedLow;
+        }
+
+        // Keeps 54 bits: the 53 of a double and one to round with
+        long top = high >>> 63;
+        long result = high >>> (top + 9);
+        binaryExponent -= 1 ^ top;
+
+        // Exactly halfway between two doubles, which a truncated power can't tell apart from just below halfway
+        if (low == 0 && (high & 0x1FF) == 0 && (result & 3) == 1) {
+            return -1;
+        }
+
+        result += result & 1;
+        result >>>= 1;
+        if (result >>> 53 > 0) {
+            result >>>= 1;
+            binaryExponent++;
+        }
+
+        // Subnormal or out of range
+        if (binaryExponent <= 0 || binaryExponent >= 0x7FF) {
+            return -1;
+        }
+        return binaryExponent << 52 | result & 0x000FFFFFFFFFFFFFL;
+    }
+
+    // The high 64 bits of the unsigned 128-bit product of x and y
+    private static long multiplyHigh(long x, long y) {
+        long x0 = x & 0xFFFFFFFFL;
+        long x1 = x >>> 32;
+        long y0 = y & 0xFFFFFFFFL;
+        long y1 = y >>> 32;
+
+        long low = x0 * y0;
+        long middle = x1 * y0 + (low >>> 32);
+        long cross = (middle & 0xFFFFFFFFL) + x0 * y1;
+        return x1 * y1 + (middle >>> 32) + (cross >>> 32);
+    }
+}
@@ -0,0 +1,34 @@
+package lox;
+
+// Instructions understood by the VM. Each one is a single byte in a Chunk's code, and the ones that
+// load constants are followed by a 3-byte index into the chunk's constant pool
+final class OpCode {
+    private OpCode() {
+    }
+
+    // Pushing values
+    static final byte NUMBER = 0;
+    static final byte STRING = 1;
+    static final byte NIL = 2;
+    static final byte TRUE = 3;
+    static final byte FALSE = 4;
+
+    // Unary operators
+    static final byte NEGATE = 5;
+    static final byte NOT = 6;
+
+    // Binary operators
+    static final byte ADD = 7;
+    static final byte SUBTRACT = 8;
+    static final byte MULTIPLY = 9;
+    static final byte DIVIDE = 10;
+    static final byte GREATER = 11;
+    static final byte GREATER_EQUAL = 12;
+    static final byte LESS = 13;
+    static final byte LESS_EQUAL = 14;
+    static final byte EQUAL = 15;
+    static final byte NOT_EQUAL = 16;
+
+    // Ends the chunk, leaving its value on top of the stack
+    static final byte RETURN = 17;
+}
@@ -0,0 +1,139 @@
+package lox;
+
+// Rewrites an expression tree into a smaller one that evaluates to the same value, or fails with
+// the same runtime error. Runs between the parser and the interpreter, and counts the nodes it removes
+class Optimizer implements Expression.Visitor<Expression> {
+    // Folds constants by evaluating them, so folding can never disagree with the interpreter
+    private final Interpreter interpreter = new Interpreter();
+
+    private int removedNodes = 0;
+
+    Expression optimize(Expression expression) {
+        return expression.accept(this);
+    }
+
+    // The number of nodes removed by every optimize() call so far
+    int removedNodes() {
+        return removedNodes;
+    }
+
+    @Override
+    public Expression visitLiteralExpression(Expression.Literal expression) {
+        return expression;
+    }
+
+    // Groupings only matter to the parser, so they're dropped
+    @Override
+    public Expression visitGroupingExpression(Expression.Grouping expression) {
+        removedNodes++;
+        return expression.expression.accept(this);
+    }
+
+    @Override
+    public Expression visitUnaryExpression(Expression.Unary expression) {
+        Expression right = expression.right.accept(this);
+
+        if (right instanceof Expression.Literal) {
+            Expression folded = fold(new Expression.Unary(expression.operator, right), 1);
+            if (folded != null) {
+                return folded;
+            }
+        }
+
+        // "- -x" is x for any number, and "!!x" is x for any boolean
+        if (right instanceof Expression.Unary) {
+            Expression.Unary inner = (Expression.Unary)right;
+            TokenType type = expression.operator.type;
+
+            if (inner.operator.type == type) {
+                if ((type == TokenType.MINUS && isNumber(inner.right)) ||
+                        (type == TokenType.BANG && isBoolean(inner.right))) {
+                    removedNodes += 2;
+                    return inner.right;
+                }
+            }
+        }
+
+        if (right == expression.right) {
+            return expression;
+        }
+        return new Expression.Unary(expression.operator, right);
+    }
+
+    @Override
+    public Expression visitBinaryExpression(Expression.Binary expression) {
+        Expression left = expression.left.accept(this);
+        Expression right = expression.right.accept(this);
+
+        if (left instanceof Expression.Literal && right instanceof Expression.Literal) {
+            Expression folded = fold(new Expression.Binary(left, expression.operator, right), 2);
+            if (folded != null) {
+                return folded;
+            }
+        }
+
+        if (left == expression.left && right == expression.right) {
+            return expression;
+        }
+        return new Expression.Binary(left, expression.operator, right);
+    }
+
+    // Evaluates an operator whose operands are all literals. Returns null if that fails at runtime,
+    // so the error is still reported when the program actually runs
+    private Expression fold(Expression expression, int operands) {
+        try {
+            Expression.Literal literal = new Expression.Literal(interpreter.evaluate(expression));
+            removedNodes += operands;
+            return literal;
+        } catch (RuntimeError error) {
+            return null;
+        }
+    }
+
+    // Whether an (already optimized) expression can only ever evaluate to a number
+    private static boolean isNumber(Expression expression) {
+        if (expression instanceof Expression.Literal) {
+            return ((Expression.Literal)expression).value instanceof Double;
+        }
+
+        if (expression instanceof Expression.Unary) {
+            return ((Expression.Unary)expression).operator.type == TokenType.MINUS;
+        }
+
+        if (expression instanceof Expression.Binary) {
+            switch (((Expression.Binary)expression).operator.type) {
+                case MINUS:
+                case STAR:
+                case SLASH:
+                    return true;
+            }
+        }
+
+        return false;
+    }
+
+    // Whether an (already optimized) expression can only ever evaluate to true or false
+    private static boolean isBoolean(Expression expression) {
+        if (expression instanceof Expression.Literal) {
+            return ((Expression.Literal)expression).value instanceof Boolean;
+        }
+
+        if (expression instanceof Expression.Unary) {
+            return ((Expression.Unary)expression).operator.type == TokenType.BANG;
+        }
+
+        if (expression instanceof Expression.Binary) {
+            switch (((Expression.Binary)expression).operator.type) {
+                case GREATER:
+                case GREATER_EQUAL:
+                case LESS:
+                case LESS_EQUAL:
+                case EQUAL_EQUAL:
+                case BANG_EQUAL:
+                    return true;
+            }
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,248 @@
+package lox;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Remembers the trees parsed from recently run source code, so running the same text again skips the
+// Scanner and Parser entirely. Entries are keyed by a SHA-256 digest of the source's UTF-8 bytes, so the
+// source itself is never kept, and a String and a memory-mapped file with the same bytes share one entry.
+// The cache holds at most maxEntries trees and roughly maxBytes of them, evicting the least recently used
+// first. Trees are never modified once parsed, so one cache can be shared by Sessions on different threads
+class ParseCache {
+    // A parsed tree, and what it took to make it. "removedNodes" is what the Optimizer reported, if it ran,
+    // and "mergedNodes" how many of the tree's "treeNodes" HashConser merged away, if it ran.
+    //
+    // It also keeps what each backend made from the tree the first time a Session ran it, so running it again
+    // doesn't compile, specialize or look for shared nodes again. Two Sessions may both make one at the same
+    // time, and either result will do. Node trees and DagEvaluators change as they run, so each is lent to
+    // one Session at a time, and a Session that finds it already lent out makes its own. "bytes" only
+    // estimates the tree, not these
+    static class Entry {
+        final Expression expression;
+        final int removedNodes;
+        final int mergedNodes;
+        final int treeNodes;
+        final long bytes;
+
+        private volatile Chunk chunk;
+        private volatile CompiledExpression compiled;
+        private final AtomicReference<Node.Root> specialized = new AtomicReference<>();
+        private final AtomicReference<DagEvaluator> dag = new AtomicReference<>();
+
+        Entry(Expression expression, int removedNodes) {
+            this(expression, removedNodes, 0, 0);
+        }
+
+        // A shared DAG is estimated as if it were still a tree, which is never less than it really takes
+        Entry(Expression expression, int removedNodes, int mergedNodes, int treeNodes) {
+            this.expression = expression;
+            this.removedNodes = removedNodes;
+            this.mergedNodes = mergedNodes;
+            this.treeNodes = treeNodes;
+            this.bytes = expression.accept(new SizeEstimator());
+        }
+
+        // The tree compiled to bytecode for the VM
+        Chunk chunk() {
+            Chunk chunk = this.chunk;
+            if (chunk == null) {
+                chunk = new Compiler().compile(expression);
+                this.chunk = chunk;
+            }
+            return chunk;
+        }
+
+        // The tree compiled to a JVM class by JvmCompiler
+        CompiledExpression compiled() {
+            CompiledExpression compiled = this.compiled;
+            if (compiled == null) {
+                compiled = JvmCompiler.compile(expression);
+                this.compiled = compiled;
+            }
+            return compiled;
+        }
+
+        // Lends out the tree's Node tree, as specialized as earlier runs left it. Hand it back with
+        // giveBack once it has run
+        Node.Root takeSpecialized() {
+            Node.Root root = specialized.getAndSet(null);
+            return root != null ? root : Node.build(expression);
+        }
+
+        void giveBack(Node.Root root) {
+            specialized.set(root);
+        }
+
+        // Lends out a DagEvaluator for the tree. Hand it back with giveBack once it has run
+        DagEvaluator takeDag() {
+            DagEvaluator evaluator = dag.getAndSet(null);
+            return evaluator != null ? evaluator : new DagEvaluator(expression);
+        }
+
+        void giveBack(DagEvaluator evaluator) {
+            dag.set(evaluator);
+        }
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    // In access order, so the first entry is always the least recently used one. Guarded by "this"
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    ParseCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    // Identifies source code by its digest, and whether its tree was optimized
+    static final class Key {
+        private final byte[] digest;
+        private final boolean optimized;
+        private final int hash;
+
+        private Key(byte[] digest, boolean optimized) {
+            this.digest = digest;
+            this.optimized = optimized;
+            this.hash = Arrays.hashCode(digest) * 31 + (optimized ? 1 : 0);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)other;
+            return optimized == key.optimized && Arrays.equals(digest, key.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    static Key key(CharSequence source, boolean optimized) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException error) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(error);
+        }
+
+        if (source instanceof Utf8Source) {
+            digest.update(((Utf8Source)source).bytes());
+        } else {
+            digest.update(source.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return new Key(digest.digest(), optimized);
+    }
+
+    // Returns the tree stored for a key and marks it as recently used, or returns null
+    synchronized Entry get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return entry;
+    }
+
+    // Stores a tree, then evicts the least recently used ones until the cache fits its bounds again.
+    // A tree that is bigger than the whole cache is not stored at all
+    synchronized void put(Key key, Entry entry) {
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.bytes;
+        }
+        bytes += entry.bytes;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (entries.size() > maxEntries || bytes > maxBytes) {
+            bytes -= eldest.next().bytes;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    // Starts hits, misses and evictions again from zero, leaving the cached trees alone
+    synchronized void resetCounts() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    // Roughly how many bytes of heap the cached trees take up
+    synchronized long bytes() {
+        return bytes;
+    }
+
+    // Guesses the heap size of a tree from typical object sizes on a 64-bit JVM with compressed pointers.
+    // Tokens are counted once per node even when shared, which errs on the side of evicting too early
+    private static class SizeEstimator implements Expression.Visitor<Long> {
+        private static final long NODE = 16;
+        private static final long TOKEN = 24;
+        private static final long DOUBLE = 16;
+        private static final long STRING = 40;
+
+        @Override
+        public Long visitBinaryExpression(Expression.Binary expression) {
+            return NODE + 8 + TOKEN + expression.left.accept(this) + expression.right.accept(this);
+        }
+
+        @Override
+        public Long visitGroupingExpression(Expression.Grouping expression) {
+            return NODE + expression.expression.accept(this);
+        }
+
+        @Override
+        public Long visitLiteralExpression(Expression.Literal expression) {
+            Object value = expression.value;
+            if (value instanceof Double) {
+                return NODE + DOUBLE;
+            }
+            if (value instanceof String) {
+                return NODE + STRING + 2L * ((String)value).length();
+            }
+            return NODE;
+        }
+
+        @Override
+        public Long visitUnaryExpression(Expression.Unary expression) {
+            return NODE + TOKEN + expression.right.accept(this);
+        }
+    }
+}
@@ -1,27 +1,79 @@
 package lox;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class Parser {
-    private static class ParseError extends RuntimeException {}
+    // Thrown to unwind out of an expression after a syntax error. Errors are expected on bad input and caught
+    // right away in parse(), so it skips filling in a stack trace
+    static class ParseError extends RuntimeException {
+        final Token token;
+
+        ParseError(Token token, String message) {
+            super(message, null, false, false);
+            this.token = token;
+        }
+    }
+
+    // How many syntax errors one parse reports before it stops looking for more
+    static final int MAX_ERRORS = 100;
 
-    private final List<Token> tokens;
+    // Tokens are read by index, and only become Token objects when the tree or an error message needs one
+    private final TokenBuffer tokens;
     private int current = 0;
+    private final ErrorReporter reporter;
+    private final List<ParseError> errors = new ArrayList<>();
+
+    Parser(TokenBuffer tokens) {
+        this(tokens, new ErrorReporter(System.err));
+    }
 
-    Parser(List<Token> tokens) {
+    Parser(TokenBuffer tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
     }
 
+    // Returns the tree, or null if there were syntax errors. After an error, it skips ahead with synchronize()
+    // and keeps parsing what's left, so one pass reports every error (up to MAX_ERRORS) instead of just the first
     Expression parse() {
         try {
             return expression();
         } catch (ParseError error) {
+            recover();
             return null;
         }
     }
 
+    // The syntax errors found so far, in the order they were found
+    List<ParseError> errors() {
+        return errors;
+    }
+
+    // Looks for the rest of the syntax errors after the first one, like parse() does. PrattParser.parseArena()
+    // calls it too, so both report the same errors
+    void recover() {
+        synchronize();
+        while (!isAtEnd()) {
+            if (errors.size() == MAX_ERRORS) {
+                reporter.error(tokens.line(current), "Too many errors, stopped parsing.");
+                return;
+            }
+
+            try {
+                // Whatever this parses is thrown away. It's only looking for errors
+                expression();
+                if (!startsExpression(peekType())) {
+                    synchronize();
+                }
+            } catch (ParseError error) {
+                synchronize();
+            }
+        }
+    }
+
     // Recursive tree descent to create the abstract syntax tree...
-    private Expression expression() {
+    // Subclasses can replace how expressions are parsed while reusing the token handling below
+    Expression expression() {
         return equality();
     }
 
@@ -96,7 +148,7 @@ public class Parser {
             return new Expression.Literal(null);
         }
         else if(match(TokenType.NUMBER, TokenType.STRING)) {
-            return new Expression.Literal(previous().literal);
+            return new Expression.Literal(previousLiteral());
         }
         else if(match(TokenType.LEFT_PAREN)) {
             Expression expression = expression();
@@ -126,58 +178,112 @@ public class Parser {
             return false;
         }
 
-        return peek().type == type;
+        return peekType() == type;
     }
 
     // While not at the end of the token list, increments the index that is looked at
-    private Token advance() {
+    void advance() {
         if(!isAtEnd()) {
             current++;
         }
-
-        return previous();
     }
 
     // Checks whether or not the end of the token list has been reached
     private boolean isAtEnd() {
-        return peek().type == TokenType.EOF;
+        return peekType() == TokenType.EOF;
+    }
+
+    // Returns the type of the current token, without creating a Token for it
+    TokenType peekType() {
+        return tokens.type(current);
     }
 
     // Returns the current token
-    private Token peek() {
-        return tokens.get(current);
+    Token peek() {
+        return tokens.token(current);
     }
 
     // Returns the token before the current token
-    private Token previous() {
-        return tokens.get(current - 1);
+    Token previous() {
+        return tokens.token(current - 1);
+    }
+
+    // The index of the current token, and a way to jump past tokens that were parsed some other way
+    int position() {
+        return current;
+    }
+
+    void seek(int token) {
+        current = token;
+    }
+
+    // How many tokens there are to parse, including the EOF at the end
+    int tokenCount() {
+        return tokens.size();
     }
 
+    // The type and line of the token before the current token, without creating a Token for it
+    TokenType previousType() {
+        return tokens.type(current - 1);
+    }
+
+    int previousLine() {
+        return tokens.line(current - 1);
+    }
+
+    // Returns the value of the token before the current token, if it's a number or a string
+    Object previousLiteral() {
+        return tokens.literal(current - 1);
+    }
 
-    private Token consume(TokenType type, String message) {
+
+    void consume(TokenType type, String message) {
         if (check(type)) {
-           return advance();
+            advance();
+            return;
         }
 
         throw error(peek(), message);
     }
 
-    // Gives an error message by calling Lox.error, and returns a ParseError to be caught in parse()
-    private ParseError error(Token token, String message) {
-        Lox.error(token, message);
-        return new ParseError();
+    // Gives an error message through the error reporter, and returns a ParseError to be caught in parse()
+    ParseError error(Token token, String message) {
+        ParseError error = new ParseError(token, message);
+        if (errors.size() < MAX_ERRORS) {
+            errors.add(error);
+            reporter.error(token, message);
+        }
+        return error;
     }
 
-    // When the parser encounters an error, discards tokens until the parser reaches the next statement to get back on track
+    private static boolean startsExpression(TokenType type) {
+        switch (type) {
+            case BANG:
+            case MINUS:
+            case NUMBER:
+            case STRING:
+            case TRUE:
+            case FALSE:
+            case NIL:
+            case LEFT_PAREN:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // When the parser encounters an error, discards tokens until the parser reaches the next statement or
+    // expression to get back on track. It always discards at least one token, so every error moves the
+    // parser forward and input full of errors still parses in time linear in its length
     private void synchronize() {
         advance();
 
         while (!isAtEnd()) {
-            if (previous().type == TokenType.SEMICOLON) {
+            if (tokens.type(current - 1) == TokenType.SEMICOLON) {
                 return;
             }
 
-            switch (peek().type) {
+            switch (peekType()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -188,6 +294,9 @@ public class Parser {
                 case RETURN:
                     return;
             }
+            if (startsExpression(peekType())) {
+                return;
+            }
 
             advance();
         }
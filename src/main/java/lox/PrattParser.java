@@ -0,0 +1,198 @@
+package lox;
+
+// Parses expressions by precedence climbing instead of one method per precedence level.
+// Two tables indexed by token type drive it: what to do with a token that starts an operand,
+// and how tightly a token binds when it follows one as a binary operator.
+// Builds exactly the same trees, and reports exactly the same errors, as the recursive descent in Parser
+class PrattParser extends Parser {
+    // Binding power of binary operators, from loosest to tightest. Tokens that aren't operators get NONE,
+    // which is looser than anything parsePrecedence() is ever asked for
+    private static final int NONE = 0;
+    private static final int EQUALITY = 1;
+    private static final int COMPARISON = 2;
+    private static final int TERM = 3;
+    private static final int FACTOR = 4;
+    private static final int UNARY = 5;
+
+    private interface PrefixRule {
+        Expression parse(PrattParser parser);
+    }
+
+    private static final PrefixRule[] prefixRules = new PrefixRule[TokenType.values().length];
+    private static final int[] precedences = new int[TokenType.values().length];
+
+    static {
+        prefixRules[TokenType.NUMBER.ordinal()] = PrattParser::literal;
+        prefixRules[TokenType.STRING.ordinal()] = PrattParser::literal;
+        prefixRules[TokenType.TRUE.ordinal()] = parser -> new Expression.Literal(true);
+        prefixRules[TokenType.FALSE.ordinal()] = parser -> new Expression.Literal(false);
+        prefixRules[TokenType.NIL.ordinal()] = parser -> new Expression.Literal(null);
+        prefixRules[TokenType.LEFT_PAREN.ordinal()] = PrattParser::grouping;
+        prefixRules[TokenType.BANG.ordinal()] = PrattParser::unary;
+        prefixRules[TokenType.MINUS.ordinal()] = PrattParser::unary;
+
+        precedences[TokenType.BANG_EQUAL.ordinal()] = EQUALITY;
+        precedences[TokenType.EQUAL_EQUAL.ordinal()] = EQUALITY;
+        precedences[TokenType.GREATER.ordinal()] = COMPARISON;
+        precedences[TokenType.GREATER_EQUAL.ordinal()] = COMPARISON;
+        precedences[TokenType.LESS.ordinal()] = COMPARISON;
+        precedences[TokenType.LESS_EQUAL.ordinal()] = COMPARISON;
+        precedences[TokenType.PLUS.ordinal()] = TERM;
+        precedences[TokenType.MINUS.ordinal()] = TERM;
+        precedences[TokenType.STAR.ordinal()] = FACTOR;
+        precedences[TokenType.SLASH.ordinal()] = FACTOR;
+    }
+
+    // Operators of one type on one line would all make identical Tokens, so parseArena() keeps the last Token
+    // made for each type and reuses it while the line stays the same
+    private Token[] operators;
+
+    PrattParser(TokenBuffer tokens) {
+        super(tokens);
+    }
+
+    PrattParser(TokenBuffer tokens, ErrorReporter reporter) {
+        super(tokens, reporter);
+    }
+
+    @Override
+    Expression expression() {
+        return parsePrecedence(EQUALITY);
+    }
+
+    // Parses the same grammar into an ExpressionArena instead of a tree of objects, or returns null after
+    // syntax errors, reporting the same ones parse() would. A node is only added once its operands have been,
+    // so the arena ends up in postfix order
+    ExpressionArena parseArena() {
+        // A node never takes more than three ints per token it was parsed from, and about half of the tokens
+        // are operators or literals that need a value in one of the pools
+        int size = tokenCount();
+        ExpressionArena arena = new ExpressionArena(3 * size, size / 2 + 1);
+        operators = new Token[TokenType.values().length];
+        try {
+            parsePrecedence(arena, EQUALITY);
+            return arena;
+        } catch (ParseError error) {
+            recover();
+            return null;
+        }
+    }
+
+    // Parses an operand, then keeps folding it into binary expressions for as long as the next operator
+    // binds at least as tightly as "precedence". Operators are left-associative, so the right operand
+    // only takes operators that bind strictly tighter
+    private Expression parsePrecedence(int precedence) {
+        int start = position();
+        Expression reused = reuse(start, precedence);
+        if (reused != null) {
+            return reused;
+        }
+
+        PrefixRule prefix = prefixRules[peekType().ordinal()];
+        if (prefix == null) {
+            throw error(peek(), "Expected expression.");
+        }
+        advance();
+
+        Expression expression = prefix.parse(this);
+
+        int operatorPrecedence = precedences[peekType().ordinal()];
+        while (operatorPrecedence >= precedence) {
+            advance();
+            Token operator = previous();
+            Expression right = parsePrecedence(operatorPrecedence + 1);
+            expression = new Expression.Binary(expression, operator, right);
+
+            operatorPrecedence = precedences[peekType().ordinal()];
+        }
+
+        return parsed(start, precedence, expression);
+    }
+
+    // Hooks for IncrementalParser. What parsePrecedence() returns only depends on "precedence" and the tokens
+    // from "start" up to and including the one that stopped it, so a subtree parsed before can stand in for
+    // parsing those tokens again. reuse() returns such a subtree, after seek()ing past its tokens, or null to
+    // parse them. parsed() sees every subtree that was parsed instead
+    Expression reuse(int start, int precedence) {
+        return null;
+    }
+
+    Expression parsed(int start, int precedence, Expression expression) {
+        return expression;
+    }
+
+    // parsePrecedence(), adding the nodes to an arena. Returns the index of the node it parsed
+    private int parsePrecedence(ExpressionArena arena, int precedence) {
+        TokenType type = peekType();
+        if (prefixRules[type.ordinal()] == null) {
+            throw error(peek(), "Expected expression.");
+        }
+        advance();
+
+        int node;
+        switch (type) {
+            case NUMBER:
+            case STRING:
+                node = arena.literal(previousLiteral());
+                break;
+            case TRUE:
+                node = arena.literal(true);
+                break;
+            case FALSE:
+                node = arena.literal(false);
+                break;
+            case NIL:
+                node = arena.literal(null);
+                break;
+            case LEFT_PAREN:
+                int inner = parsePrecedence(arena, EQUALITY);
+                consume(TokenType.RIGHT_PAREN, "Expected ')' after expression.");
+                node = arena.grouping(inner);
+                break;
+            default:
+                Token operator = sharedOperator();
+                node = arena.unary(operator, parsePrecedence(arena, UNARY));
+                break;
+        }
+
+        int operatorPrecedence = precedences[peekType().ordinal()];
+        while (operatorPrecedence >= precedence) {
+            advance();
+            Token operator = sharedOperator();
+            int right = parsePrecedence(arena, operatorPrecedence + 1);
+            node = arena.binary(node, operator, right);
+
+            operatorPrecedence = precedences[peekType().ordinal()];
+        }
+
+        return node;
+    }
+
+    private Token sharedOperator() {
+        int type = previousType().ordinal();
+        Token operator = operators[type];
+        if (operator == null || operator.line != previousLine()) {
+            operator = previous();
+            operators[type] = operator;
+        }
+        return operator;
+    }
+
+    private Expression literal() {
+        return new Expression.Literal(previousLiteral());
+    }
+
+    private Expression grouping() {
+        Expression expression = expression();
+        // Makes sure there are both left and right parenthesizes, otherwise gives an error
+        consume(TokenType.RIGHT_PAREN, "Expected ')' after expression.");
+        return new Expression.Grouping(expression);
+    }
+
+    // The operand of a unary operator can only be another unary expression or a primary
+    private Expression unary() {
+        Token operator = previous();
+        Expression right = parsePrecedence(UNARY);
+        return new Expression.Unary(operator, right);
+    }
+}
@@ -0,0 +1,366 @@
+package lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Evaluates expressions the way the Interpreter does while recording, for every node, how often it ran and
+// where the time went. Nodes are named by their operator and source line, so all the "+" on line 3 are
+// reported together. Results from every run are added up, and can be printed as a ranked report of the
+// hottest nodes or written as collapsed stacks ("root;child;grandchild value" lines) for flamegraph tools.
+//
+// It either times every node, or samples: a background thread looks at which node each run is in every
+// "interval" and counts it, and nodes aren't timed or counted at all. To bound the cost of timing, literals
+// are counted but not timed, so their time shows up as exclusive time of the node above them. Stacks deeper
+// than MAX_DEPTH are cut off there, with everything below charged to the deepest frame that's kept.
+//
+// Everything about a tree that doesn't change between runs, like its nodes' names and stacks, is worked out
+// the first time it's profiled and kept as a Shape, with every name and stack interned as a number. A run
+// then only touches arrays: timing adds to a count and a time per node, and sampling just publishes the
+// index of the node it's in. Can be shared by Sessions on different threads
+class Profiler {
+    private static final int MAX_DEPTH = 128;
+
+    // A tree's nodes numbered in prefix order, so a node's first operand is the next node, and every node
+    // after it up to "end" is below it. Every node's name and stack, and the node its stack is cut off at,
+    // are all worked out before the first run. Never changes once built, so runs on any thread can share one
+    private static final class Shape {
+        final int[] end;
+        final int[] name;
+        final int[] stack;
+        final int[] kept;
+
+        Shape(int nodes) {
+            end = new int[nodes];
+            name = new int[nodes];
+            stack = new int[nodes];
+            kept = new int[nodes];
+        }
+
+        int nodes() {
+            return end.length;
+        }
+    }
+
+    // One evaluation. Timing adds up each node's count and time here. Sampling publishes the node it's in
+    // right now in "current", or -1 when it's in none
+    private static final class Run {
+        final Shape shape;
+        final long[] counts;
+        final long[] inclusive;
+        final AtomicInteger current = new AtomicInteger(-1);
+
+        Run(Shape shape, boolean sampling) {
+            this.shape = shape;
+            this.counts = sampling ? null : new long[shape.nodes()];
+            this.inclusive = sampling ? null : new long[shape.nodes()];
+        }
+    }
+
+    // The totals for all the nodes with one name
+    private static final class Hot {
+        final String name;
+        long count = 0;
+        long inclusive = 0;
+        long exclusive = 0;
+        long samples = 0;
+
+        Hot(String name) {
+            this.name = name;
+        }
+    }
+
+    private final boolean sampling;
+    private final long intervalNanos;
+
+    // Runs in progress, for the sampling thread to look at
+    private final Set<Run> running = ConcurrentHashMap.newKeySet();
+
+    // Guarded by "this". Trees are only held weakly, so profiling doesn't keep them alive
+    private final Map<Expression, Shape> shapes = new WeakHashMap<>();
+    // The totals for every name, indexed by its number
+    private final List<Hot> hot = new ArrayList<>();
+    private final Map<String, Integer> names = new HashMap<>();
+    // Every stack is its parent stack (or -1) with one more name on the end. Keyed by both numbers
+    private final Map<Long, Integer> stackIds = new HashMap<>();
+    private int[] stackParents = new int[64];
+    private int[] stackNames = new int[64];
+    private long[] stackValues = new long[64];
+    private int stackCount = 0;
+
+    // Times every node
+    Profiler() {
+        this(false, 0);
+    }
+
+    // Samples every "intervalNanos" instead of timing every node, if "sampling" is set
+    Profiler(boolean sampling, long intervalNanos) {
+        this.sampling = sampling;
+        this.intervalNanos = intervalNanos;
+        if (sampling) {
+            Thread sampler = new Thread(this::sample, "lox-profiler");
+            sampler.setDaemon(true);
+            sampler.start();
+        }
+    }
+
+    // Evaluates an expression to the same value as Interpreter.evaluate(), and adds what it did to the profile
+    Object evaluate(Expression expression) {
+        Run run = new Run(shape(expression), sampling);
+        if (!sampling) {
+            try {
+                return Rope.flatten(timed(expression, 0, run));
+            } finally {
+                record(run);
+            }
+        }
+
+        running.add(run);
+        try {
+            return Rope.flatten(sampled(expression, 0, -1, run));
+        } finally {
+            running.remove(run);
+        }
+    }
+
+    private Object timed(Expression expression, int node, Run run) {
+        run.counts[node]++;
+        if (expression.kind == Expression.LITERAL) {
+            return ((Expression.Literal)expression).value;
+        }
+
+        long start = System.nanoTime();
+        try {
+            return step(expression, node, run);
+        } finally {
+            run.inclusive[node] += System.nanoTime() - start;
+        }
+    }
+
+    // An ordered write is enough for the sampling thread to see the node soon, and doesn't stall the way a
+    // volatile one does
+    private Object sampled(Expression expression, int node, int parent, Run run) {
+        run.current.lazySet(node);
+        try {
+            return step(expression, node, run);
+        } finally {
+            run.current.lazySet(parent);
+        }
+    }
+
+    // Evaluates one node, sending its operands back through timed() or sampled()
+    private Object step(Expression expression, int node, Run run) {
+        switch (expression.kind) {
+            case Expression.BINARY:
+                Expression.Binary binary = (Expression.Binary)expression;
+                Object left = child(binary.left, node + 1, node, run);
+                Object right = child(binary.right, run.shape.end[node + 1], node, run);
+                return Interpreter.binary(binary.operator, left, right);
+            case Expression.GROUPING:
+                return child(((Expression.Grouping)expression).expression, node + 1, node, run);
+            case Expression.UNARY:
+                Expression.Unary unary = (Expression.Unary)expression;
+                return Interpreter.unary(unary.operator, child(unary.right, node + 1, node, run));
+            case Expression.LITERAL:
+                return ((Expression.Literal)expression).value;
+        }
+        throw new IllegalArgumentException("Unknown expression kind " + expression.kind + ".");
+    }
+
+    private Object child(Expression expression, int node, int parent, Run run) {
+        return sampling ? sampled(expression, node, parent, run) : timed(expression, node, run);
+    }
+
+    // The tree's Shape, built the first time it's profiled
+    private synchronized Shape shape(Expression expression) {
+        Shape shape = shapes.get(expression);
+        if (shape == null) {
+            shape = new Shape(Stats.countNodes(expression));
+            number(expression, shape, 0, -1, -1, 1, 0);
+            shapes.put(expression, shape);
+        }
+        return shape;
+    }
+
+    // Fills in the Shape for the node numbered "node" and everything below it, and returns the number after
+    // the last of them. "parent" is the node above, "parentStack" its stack, and "depth" how deep this one is.
+    // Literals and groupings take the line of the nearest operator above them
+    private int number(Expression expression, Shape shape, int node, int parent, int parentStack, int depth, int line) {
+        String what;
+        switch (expression.kind) {
+            case Expression.BINARY:
+                what = ((Expression.Binary)expression).operator.lexeme;
+                line = ((Expression.Binary)expression).operator.line;
+                break;
+            case Expression.GROUPING:
+                what = "group";
+                break;
+            case Expression.UNARY:
+                what = ((Expression.Unary)expression).operator.lexeme;
+                line = ((Expression.Unary)expression).operator.line;
+                break;
+            case Expression.LITERAL:
+                what = "literal";
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown expression kind " + expression.kind + ".");
+        }
+
+        shape.name[node] = name(line == 0 ? what : what + " (line " + line + ")");
+        if (depth > MAX_DEPTH) {
+            shape.kept[node] = shape.kept[parent];
+            shape.stack[node] = shape.stack[parent];
+        } else {
+            shape.kept[node] = node;
+            shape.stack[node] = stack(parentStack, shape.name[node]);
+        }
+
+        int next = node + 1;
+        switch (expression.kind) {
+            case Expression.BINARY:
+                Expression.Binary binary = (Expression.Binary)expression;
+                next = number(binary.left, shape, next, node, shape.stack[node], depth + 1, line);
+                next = number(binary.right, shape, next, node, shape.stack[node], depth + 1, line);
+                break;
+            case Expression.GROUPING:
+                next = number(((Expression.Grouping)expression).expression, shape, next, node, shape.stack[node], depth + 1, line);
+                break;
+            case Expression.UNARY:
+                next = number(((Expression.Unary)expression).right, shape, next, node, shape.stack[node], depth + 1, line);
+                break;
+        }
+        shape.end[node] = next;
+        return next;
+    }
+
+    // The number for a node name, with its totals
+    private int name(String name) {
+        Integer id = names.get(name);
+        if (id == null) {
+            id = hot.size();
+            hot.add(new Hot(name));
+            names.put(name, id);
+        }
+        return id;
+    }
+
+    // The number for the stack made of "parent" with "name" on the end
+    private int stack(int parent, int name) {
+        Long key = (long)parent << 32 | name;
+        Integer id = stackIds.get(key);
+        if (id == null) {
+            id = stackCount;
+            if (stackCount == stackParents.length) {
+                stackParents = Arrays.copyOf(stackParents, stackCount * 2);
+                stackNames = Arrays.copyOf(stackNames, stackCount * 2);
+                stackValues = Arrays.copyOf(stackValues, stackCount * 2);
+            }
+            stackParents[id] = parent;
+            stackNames[id] = name;
+            stackCount++;
+            stackIds.put(key, id);
+        }
+        return id;
+    }
+
+    // Looks at every run in progress each interval, and counts a sample for the node it's in
+    private void sample() {
+        for (;;) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(intervalNanos);
+            } catch (InterruptedException error) {
+                return;
+            }
+            for (Run run : running) {
+                int node = run.current.get();
+                if (node >= 0) {
+                    int kept = run.shape.kept[node];
+                    synchronized (this) {
+                        hot.get(run.shape.name[kept]).samples++;
+                        stackValues[run.shape.stack[kept]]++;
+                    }
+                }
+            }
+        }
+    }
+
+    // Adds a finished timed run to the totals
+    private synchronized void record(Run run) {
+        Shape shape = run.shape;
+        for (int node = 0; node < shape.nodes(); node++) {
+            // A node's exclusive time is what's left of its time after its operands'
+            long exclusive = run.inclusive[node];
+            for (int child = node + 1; child < shape.end[node]; child = shape.end[child]) {
+                exclusive -= run.inclusive[child];
+            }
+
+            Hot total = hot.get(shape.name[node]);
+            total.count += run.counts[node];
+            total.inclusive += run.inclusive[node];
+            total.exclusive += exclusive;
+            if (exclusive > 0) {
+                stackValues[shape.stack[node]] += exclusive;
+            }
+        }
+    }
+
+    // The names of every frame from the root down to this stack, separated by ";"
+    private String stackName(int stack) {
+        int depth = 0;
+        for (int at = stack; at >= 0; at = stackParents[at]) {
+            depth++;
+        }
+        String[] parts = new String[depth];
+        for (int at = stack; at >= 0; at = stackParents[at]) {
+            parts[--depth] = hot.get(stackNames[at]).name;
+        }
+        return String.join(";", parts);
+    }
+
+    // Prints the "limit" nodes with the most exclusive time (or samples), hottest first
+    synchronized void report(PrintStream out, int limit) {
+        List<Hot> nodes = new ArrayList<>(hot);
+        if (sampling) {
+            nodes.sort((a, b) -> Long.compare(b.samples, a.samples));
+            out.println("== profile: samples every " + TimeUnit.NANOSECONDS.toMicros(intervalNanos) + " us ==");
+            out.println(String.format("%10s  %s", "samples", "node"));
+        } else {
+            nodes.sort((a, b) -> Long.compare(b.exclusive, a.exclusive));
+            out.println("== profile ==");
+            out.println(String.format("%12s %12s %12s  %s", "self us", "total us", "count", "node"));
+        }
+
+        for (Hot node : nodes.subList(0, Math.min(limit, nodes.size()))) {
+            if (sampling) {
+                out.println(String.format("%10d  %s", node.samples, node.name));
+            } else {
+                out.println(String.format("%12d %12d %12d  %s", TimeUnit.NANOSECONDS.toMicros(node.exclusive),
+                        TimeUnit.NANOSECONDS.toMicros(node.inclusive), node.count, node.name));
+            }
+        }
+    }
+
+    // Writes one "stack value" line per distinct stack: samples when sampling, otherwise exclusive nanoseconds
+    synchronized void writeCollapsed(Path path) throws IOException {
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            for (int stack = 0; stack < stackCount; stack++) {
+                if (stackValues[stack] > 0) {
+                    writer.println(stackName(stack) + " " + stackValues[stack]);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package lox;
+
+import java.util.ArrayDeque;
+
+// A string made by concatenating two others, which aren't copied into one until something needs the text.
+// The Interpreter builds these for "+" on strings, so a chain of n concatenations copies each character a
+// constant number of times when the result is flattened, instead of once more for every "+" after it.
+// Ropes never leave the Interpreter: every value it returns, compares or prints is flattened first
+final class Rope {
+    // Concatenations this short are just copied, since a Rope costs about as much as copying them
+    private static final int SHORT = 32;
+
+    // Each part is a String or another Rope. They're dropped once the Rope has been flattened
+    private Object left;
+    private Object right;
+    private final int length;
+    private String flat;
+
+    private Rope(Object left, Object right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    // Whether a value is a Lox string, flattened or not
+    static boolean isString(Object value) {
+        return value instanceof String || value instanceof Rope;
+    }
+
+    // Concatenates two Lox strings, each either a String or a Rope
+    static Object concat(Object left, Object right) {
+        int length = length(left) + length(right);
+        if (length < 0) {
+            // The same error String concatenation gives when the result can't fit in an array
+            throw new OutOfMemoryError("String is too long.");
+        }
+
+        if (length <= SHORT && left instanceof String && right instanceof String) {
+            return ((String)left).concat((String)right);
+        }
+        return new Rope(left, right, length);
+    }
+
+    // Turns a Rope into a String, and returns every other value as it is
+    static Object flatten(Object value) {
+        if (value instanceof Rope) {
+            return value.toString();
+        }
+        return value;
+    }
+
+    private static int length(Object string) {
+        if (string instanceof Rope) {
+            return ((Rope)string).length;
+        }
+        return ((String)string).length();
+    }
+
+    // Copies every part into one String, left to right, and remembers it. Walks the parts with a stack
+    // instead of recursion, since a chain of thousands of concatenations is thousands of Ropes deep
+    @Override
+    public String toString() {
+        if (flat != null) {
+            return flat;
+        }
+
+        char[] chars = new char[length];
+        int at = 0;
+        ArrayDeque<Object> parts = new ArrayDeque<>();
+        parts.push(right);
+        parts.push(left);
+
+        while (!parts.isEmpty()) {
+            Object part = parts.pop();
+            if (part instanceof Rope) {
+                Rope rope = (Rope)part;
+                if (rope.flat == null) {
+                    parts.push(rope.right);
+                    parts.push(rope.left);
+                    continue;
+                }
+                part = rope.flat;
+            }
+
+            String string = (String)part;
+            string.getChars(0, string.length(), chars, at);
+            at += string.length();
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+        return flat;
+    }
+}
@@ -1,13 +1,17 @@
 package lox;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
+import java.util.function.IntPredicate;
 
 public class Scanner {
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    // Either a String, or a Utf8Source reading bytes without decoding them first
+    private final CharSequence source;
+    private final boolean utf8;
+    private final TokenBuffer tokens;
+    private final ErrorReporter reporter;
+    // Where literal values are boxed, so equal literals share one object
+    private final ConstantPool constants;
 
     private int start = 0;
     private int current = 0;
@@ -35,21 +39,81 @@ public class Scanner {
         keywords.put("while",  TokenType.WHILE);
     }
 
-    Scanner(String source) {
+    // The text of every token type that is always spelled the same way, so those tokens can share one String
+    private static final String[] lexemes = new String[TokenType.values().length];
+
+    static {
+        String[][] fixed = {
+                {"LEFT_PAREN", "("}, {"RIGHT_PAREN", ")"}, {"LEFT_BRACE", "{"}, {"RIGHT_BRACE", "}"},
+                {"COMMA", ","}, {"DOT", "."}, {"MINUS", "-"}, {"PLUS", "+"}, {"SEMICOLON", ";"},
+                {"SLASH", "/"}, {"STAR", "*"}, {"BANG", "!"}, {"BANG_EQUAL", "!="}, {"EQUAL", "="},
+                {"EQUAL_EQUAL", "=="}, {"GREATER", ">"}, {"GREATER_EQUAL", ">="}, {"LESS", "<"},
+                {"LESS_EQUAL", "<="}, {"EOF", ""}
+        };
+        for (String[] lexeme : fixed) {
+            lexemes[TokenType.valueOf(lexeme[0]).ordinal()] = lexeme[1];
+        }
+        for (Map.Entry<String, TokenType> keyword : keywords.entrySet()) {
+            lexemes[keyword.getValue().ordinal()] = keyword.getKey();
+        }
+    }
+
+    Scanner(CharSequence source) {
+        this(source, new ErrorReporter(System.err));
+    }
+
+    Scanner(CharSequence source, ErrorReporter reporter) {
+        this(source, reporter, new ConstantPool());
+    }
+
+    Scanner(CharSequence source, ErrorReporter reporter, ConstantPool constants) {
         this.source = source;
+        this.utf8 = source instanceof Utf8Source;
+        this.tokens = new TokenBuffer(source);
+        this.reporter = reporter;
+        this.constants = constants;
+    }
+
+    // The text of tokens that are always spelled the same way, or null if the text has to come from the source
+    static String lexeme(TokenType type) {
+        return lexemes[type.ordinal()];
     }
 
     // Scans the entire source code for tokens, one character at a time, and returns those tokens
-    List<Token> scanTokens() {
+    TokenBuffer scanTokens() {
         while(!isAtEnd()) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(TokenType.EOF, "", null, line));
+        start = current;
+        addToken(TokenType.EOF);
         return tokens;
     }
 
+    // Scans from "from", which must be where a token starts, on line "line", as if everything before it had
+    // already been scanned. Stops at the end, adding EOF, or at the first position where "stop" is true.
+    // Either way, position() is where it stopped
+    TokenBuffer scanFrom(int from, int line, IntPredicate stop) {
+        this.current = from;
+        this.line = line;
+        while(!isAtEnd()) {
+            if (stop.test(current)) {
+                return tokens;
+            }
+            start = current;
+            scanToken();
+        }
+
+        start = current;
+        addToken(TokenType.EOF);
+        return tokens;
+    }
+
+    int position() {
+        return current;
+    }
+
     // For every character(s) scanned, determines it's corresponding token
     private void scanToken() {
         char c = advance();
@@ -101,7 +165,11 @@ public class Scanner {
                 }
                 // Returns an error if the scanned character does not have an associated token
                 else {
-                    Lox.error(line, "Unexpected character");
+                    reporter.error(line, "Unexpected character");
+                    // Reports a multi-byte UTF-8 character once, not once per byte
+                    while (utf8 && !isAtEnd() && Utf8Source.isContinuation(peek())) {
+                        advance();
+                    }
                     break;
                 }
         }
@@ -124,10 +192,9 @@ public class Scanner {
         addToken(type, null);
     }
 
-    // Adds the recognized token to the list of tokens
+    // Adds the recognized token to the token buffer. Its text stays in the source until someone asks for it
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(type, start, current - start, line, literal);
     }
 
     // Checks to see if the character after the one that was just scanned is what one would expect
@@ -168,7 +235,7 @@ public class Scanner {
 
         // Throws an error if the string wasn't terminated
         if(isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
@@ -176,7 +243,7 @@ public class Scanner {
         advance();
 
         // Gets the literal value of the string by trimming the quotation marks
-        String value = source.substring(start + 1, current - 1);
+        String value = constants.string(source, start + 1, current - 1);
         addToken(TokenType.STRING, value);
     }
 
@@ -203,7 +270,7 @@ public class Scanner {
             }
         }
 
-        Double value = Double.parseDouble(source.substring(start, current));
+        Double value = constants.number(NumberParser.parse(source, start, current));
         addToken(TokenType.NUMBER, value);
 
     }
@@ -214,14 +281,59 @@ public class Scanner {
             advance();
         }
 
-        String text = source.substring(start, current);
+        addToken(identifierType());
+    }
 
-        TokenType type = keywords.get(text);
-        if (type == null) {
-            type = TokenType.IDENTIFIER;
+    // Recognizes keywords by reading the identifier's characters in place, one branch per letter,
+    // so no String is needed to look them up. Must agree with the keywords map above
+    private TokenType identifierType() {
+        switch (source.charAt(start)) {
+            case 'a': return checkKeyword(1, "nd", TokenType.AND);
+            case 'c': return checkKeyword(1, "lass", TokenType.CLASS);
+            case 'e': return checkKeyword(1, "lse", TokenType.ELSE);
+            case 'f':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'a': return checkKeyword(2, "lse", TokenType.FALSE);
+                        case 'o': return checkKeyword(2, "r", TokenType.FOR);
+                        case 'u': return checkKeyword(2, "n", TokenType.FUN);
+                    }
+                }
+                break;
+            case 'i': return checkKeyword(1, "f", TokenType.IF);
+            case 'n': return checkKeyword(1, "il", TokenType.NIL);
+            case 'o': return checkKeyword(1, "r", TokenType.OR);
+            case 'p': return checkKeyword(1, "rint", TokenType.PRINT);
+            case 'r': return checkKeyword(1, "eturn", TokenType.RETURN);
+            case 's': return checkKeyword(1, "uper", TokenType.SUPER);
+            case 't':
+                if (current - start > 1) {
+                    switch (source.charAt(start + 1)) {
+                        case 'h': return checkKeyword(2, "is", TokenType.THIS);
+                        case 'r': return checkKeyword(2, "ue", TokenType.TRUE);
+                    }
+                }
+                break;
+            case 'v': return checkKeyword(1, "ar", TokenType.VAR);
+            case 'w': return checkKeyword(1, "hile", TokenType.WHILE);
+        }
+
+        return TokenType.IDENTIFIER;
+    }
+
+    // Checks whether the rest of the identifier, after its first "offset" characters, is exactly "rest"
+    private TokenType checkKeyword(int offset, String rest, TokenType type) {
+        if (current - start != offset + rest.length()) {
+            return TokenType.IDENTIFIER;
+        }
+
+        for (int i = 0; i < rest.length(); i++) {
+            if (source.charAt(start + offset + i) != rest.charAt(i)) {
+                return TokenType.IDENTIFIER;
+            }
         }
 
-        addToken(type);
+        return type;
     }
 
     private boolean isAlpha(char c) {
@@ -0,0 +1,170 @@
+package lox;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Keeps one JVM running and evaluates Lox code sent to it over a loopback TCP port, so repeated runs skip
+// JVM startup and reuse code the JIT has already compiled. Every connection gets its own thread, and every
+// request its own fork of the template Session, so requests never see each other's errors.
+//
+// The protocol is framed: a request is a 4-byte length and that many bytes of UTF-8 source. The reply is
+// a series of frames, each a tag byte, a 4-byte length and that many bytes: OUT for printed values, ERR for
+// error messages, both sent as they happen, and finally EXIT, whose 4-byte body is the status runFile
+// would have exited with. A request that makes jlox itself fail, like one nested too deep for the stack, gets
+// an ERR frame saying so and EXIT 70. A connection can send any number of requests, one after another
+class Server {
+    static final byte OUT = 'o';
+    static final byte ERR = 'e';
+    static final byte EXIT = 'x';
+
+    // Larger requests are refused, so a bad length can't make the server allocate gigabytes
+    private static final int MAX_REQUEST_BYTES = 64 * 1024 * 1024;
+
+    private final Session template;
+
+    Server(Session template) {
+        this.template = template;
+    }
+
+    // Accepts connections on 127.0.0.1:port until the process is stopped
+    void serve(int port) throws IOException {
+        ExecutorService connections = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "lox-connection");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        try (ServerSocket server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress())) {
+            System.err.println("Listening on " + server.getLocalSocketAddress() + ".");
+            for (;;) {
+                Socket socket = server.accept();
+                connections.execute(() -> handle(socket));
+            }
+        } finally {
+            connections.shutdownNow();
+        }
+    }
+
+    // Answers requests on one connection until the client closes it
+    private void handle(Socket socket) {
+        try (Socket connection = socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+
+            for (;;) {
+                String source;
+                try {
+                    source = readRequest(in);
+                } catch (EOFException closed) {
+                    return;
+                }
+                run(source, out);
+            }
+        } catch (IOException error) {
+            // The client went away mid-request. Its session is simply dropped
+        }
+    }
+
+    private void run(String source, DataOutputStream out) throws IOException {
+        PrintStream printed = frames(out, OUT);
+        PrintStream errors = frames(out, ERR);
+        Session session = template.fork(printed, errors);
+        boolean failed = false;
+        try {
+            session.run(source);
+        } catch (RuntimeException | StackOverflowError error) {
+            // A limit of jlox rather than a Lox error, like a tree nested too deep for the stack. The request
+            // fails like one with a runtime error, and the connection stays open for the next one
+            printed.flush();
+            errors.println("Could not run request: " + error);
+            failed = true;
+        }
+        printed.flush();
+        errors.flush();
+
+        int status = failed ? 70 : session.reporter.hadError ? 65 : session.reporter.hadRuntimeError ? 70 : 0;
+        synchronized (out) {
+            out.writeByte(EXIT);
+            out.writeInt(4);
+            out.writeInt(status);
+            out.flush();
+        }
+    }
+
+    private static String readRequest(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > MAX_REQUEST_BYTES) {
+            throw new IOException("Request of " + length + " bytes is too large.");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // A PrintStream that sends everything printed to it as frames tagged "tag", one per write
+    private static PrintStream frames(DataOutputStream out, byte tag) {
+        OutputStream framed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte)b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                synchronized (out) {
+                    out.writeByte(tag);
+                    out.writeInt(length);
+                    out.write(bytes, offset, length);
+                    out.flush();
+                }
+            }
+        };
+        try {
+            return new PrintStream(framed, true, "UTF-8");
+        } catch (UnsupportedEncodingException error) {
+            // Every Java platform is required to support UTF-8
+            throw new IllegalStateException(error);
+        }
+    }
+
+    // The client side: sends source to a server on 127.0.0.1:port, copies the output and errors it streams
+    // back to "out" and "err" as they arrive, and returns the status the server finished with
+    static int request(int port, byte[] source, PrintStream out, PrintStream err) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            DataOutputStream request = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            request.writeInt(source.length);
+            request.write(source);
+            request.flush();
+
+            DataInputStream reply = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            for (;;) {
+                byte tag = reply.readByte();
+                byte[] body = new byte[reply.readInt()];
+                reply.readFully(body);
+
+                if (tag == EXIT) {
+                    out.flush();
+                    err.flush();
+                    return ByteBuffer.wrap(body).getInt();
+                }
+                PrintStream stream = tag == ERR ? err : out;
+                stream.write(body, 0, body.length);
+                stream.flush();
+            }
+        }
+    }
+}
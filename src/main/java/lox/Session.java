@@ -0,0 +1,258 @@
+package lox;
+
+import java.io.PrintStream;
+import java.util.function.IntSupplier;
+
+// Everything one run of Lox code needs: where its output and errors go, the interpreter state,
+// and the options it was started with. Sessions share nothing, so different ones can run
+// on different threads at the same time
+class Session {
+    final PrintStream out;
+    final PrintStream err;
+    final ErrorReporter reporter;
+
+    private final Interpreter interpreter;
+    private final VM vm;
+    private final ArenaEvaluator arenaEvaluator = new ArenaEvaluator();
+
+    // Runs expressions on the bytecode VM instead of walking the tree with the Interpreter
+    boolean useVM = false;
+    // Compiles expressions into JVM classes with JvmCompiler instead of walking the tree
+    boolean useJVM = false;
+    // Evaluates expressions with a tree of self-specializing Nodes instead of the Interpreter
+    boolean specialize = false;
+    // Parses source straight into an ExpressionArena and evaluates it with ArenaEvaluator, never building a tree.
+    // Trees from elsewhere, like .loxc files, are flattened into an arena first. Optimizing, sharing, caching
+    // and profiling all work on trees, so they don't apply
+    boolean arena = false;
+    // Folds constants and simplifies the tree before evaluating it
+    boolean optimize = false;
+    // Interns literals in ConstantPool's process-wide table, so trees parsed by this session, its forks and
+    // any other session that does the same share equal literals. Otherwise each parse has its own pool
+    boolean sharedConstants = false;
+    // Merges identical subtrees into shared nodes with HashConser, and evaluates each shared node only once
+    // per run with DagEvaluator when walking the tree. The other backends run the shared tree as it is
+    boolean share = false;
+    // Remembers parsed trees so repeated source skips scanning and parsing. Forks share it. Null turns it off
+    ParseCache cache = null;
+    // Where each phase records what it did and how long it took. Forks share it. Null turns it off
+    Stats stats = null;
+    // Evaluates with the Profiler instead of the Interpreter, adding to its profile. Forks share it. Null turns it off
+    Profiler profiler = null;
+
+    Session(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+        this.reporter = new ErrorReporter(err);
+        this.interpreter = new Interpreter(out, reporter);
+        this.vm = new VM(out, reporter);
+    }
+
+    // Creates a session with the same options as this one, writing somewhere else
+    Session fork(PrintStream out, PrintStream err) {
+        Session session = new Session(out, err);
+        session.useVM = useVM;
+        session.useJVM = useJVM;
+        session.specialize = specialize;
+        session.arena = arena;
+        session.optimize = optimize;
+        session.share = share;
+        session.sharedConstants = sharedConstants;
+        session.cache = cache;
+        session.stats = stats;
+        session.profiler = profiler;
+        return session;
+    }
+
+    void run(CharSequence source) {
+        int errors = reporter.errorCount;
+        int runtimeErrors = reporter.runtimeErrorCount;
+        try {
+            runSource(source);
+        } finally {
+            countErrors(errors, runtimeErrors);
+        }
+    }
+
+    private void runSource(CharSequence source) {
+        if (arena) {
+            runArena(source);
+            return;
+        }
+
+        ParseCache.Key key = null;
+        ParseCache.Entry entry = null;
+        if (cache != null) {
+            key = ParseCache.key(source, optimize);
+            entry = cache.get(key);
+        }
+
+        if (entry == null) {
+            Expression expression = parse(source);
+            if (expression == null) {
+                return;
+            }
+            entry = prepare(expression);
+            if (cache != null) {
+                cache.put(key, entry);
+            }
+        }
+
+        execute(entry);
+    }
+
+    // Scans and parses source code into an arena and evaluates it, unless it had syntax errors
+    private void runArena(CharSequence source) {
+        TokenBuffer tokens = scan(source);
+
+        long start = stats == null ? 0 : System.nanoTime();
+        ExpressionArena parsed = new PrattParser(tokens, reporter).parseArena();
+        if (stats != null) {
+            stats.parsed(parsed == null ? 0 : Stats.countNodes(parsed), System.nanoTime() - start);
+        }
+
+        if (parsed != null && !reporter.hadError) {
+            evaluate(() -> interpret(() -> arenaEvaluator.evaluate(parsed)), () -> Stats.countNodes(parsed));
+        }
+    }
+
+    // Runs a tree that was parsed somewhere else, like one loaded from a .loxc file
+    void run(Expression expression) {
+        int errors = reporter.errorCount;
+        int runtimeErrors = reporter.runtimeErrorCount;
+        try {
+            execute(prepare(expression));
+        } finally {
+            countErrors(errors, runtimeErrors);
+        }
+    }
+
+    // Runs the tree an IncrementalParser keeps up to date with an editor's buffer, if it has no errors at all.
+    // The parser must report to this session's reporter for the errors to count
+    void run(IncrementalParser source) {
+        Expression expression = source.tree();
+        if (expression != null) {
+            run(expression);
+        }
+    }
+
+    // Records the errors reported since the counts were "errors" and "runtimeErrors"
+    private void countErrors(int errors, int runtimeErrors) {
+        if (stats != null) {
+            stats.errors(reporter.errorCount - errors, reporter.runtimeErrorCount - runtimeErrors);
+        }
+    }
+
+    private void execute(ParseCache.Entry entry) {
+        Expression expression = entry.expression;
+        if (optimize) {
+            err.println("Optimizer removed " + entry.removedNodes + " nodes.");
+        }
+        if (share) {
+            err.println("Sharing merged " + entry.mergedNodes + " of " + entry.treeNodes + " nodes.");
+        }
+
+        evaluate(() -> {
+            if (useVM) {
+                vm.interpret(entry.chunk());
+            }
+            else if (useJVM) {
+                interpret(entry.compiled());
+            }
+            else if (specialize) {
+                // Only handed back if it ran to the end or to a runtime error, so a tree left half rewritten
+                // by something like a StackOverflowError is never run again
+                Node.Root root = entry.takeSpecialized();
+                interpret(root);
+                entry.giveBack(root);
+            }
+            else if (arena) {
+                ExpressionArena flattened = ArenaEvaluator.flatten(expression);
+                interpret(() -> arenaEvaluator.evaluate(flattened));
+            }
+            else if (profiler != null) {
+                interpret(() -> profiler.evaluate(expression));
+            }
+            else if (share) {
+                DagEvaluator evaluator = entry.takeDag();
+                interpret(evaluator::evaluate);
+                entry.giveBack(evaluator);
+            }
+            else {
+                interpreter.interpret(expression);
+            }
+        }, () -> Stats.countNodes(expression));
+    }
+
+    // Runs one evaluation, recording it in the stats along with the size of what it evaluated if it finished
+    private void evaluate(Runnable evaluation, IntSupplier treeNodes) {
+        long start = stats == null ? 0 : System.nanoTime();
+        int runtimeErrors = reporter.runtimeErrorCount;
+
+        evaluation.run();
+
+        if (stats != null) {
+            boolean finished = reporter.runtimeErrorCount == runtimeErrors;
+            stats.evaluated(finished ? treeNodes.getAsInt() : 0, System.nanoTime() - start);
+        }
+    }
+
+    // Runs a compiled expression and prints its value, or reports the runtime error that stopped it
+    private void interpret(CompiledExpression expression) {
+        try {
+            out.println(Interpreter.stringify(expression.evaluate()));
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
+
+    // Scans and parses source code. Returns null if it had syntax errors, which are never cached,
+    // so running the same broken code again reports them again
+    Expression parse(CharSequence source) {
+        TokenBuffer tokens = scan(source);
+
+        long start = stats == null ? 0 : System.nanoTime();
+        Parser parser = new PrattParser(tokens, reporter);
+        Expression expression = parser.parse();
+
+        if (stats != null) {
+            stats.parsed(expression == null ? 0 : Stats.countNodes(expression), System.nanoTime() - start);
+        }
+
+        if (reporter.hadError) {
+            return null;
+        }
+        return expression;
+    }
+
+    // Scans source code, recording how much and how long in the stats
+    private TokenBuffer scan(CharSequence source) {
+        long start = stats == null ? 0 : System.nanoTime();
+        TokenBuffer tokens = new Scanner(source, reporter, new ConstantPool(sharedConstants)).scanTokens();
+        if (stats != null) {
+            long nanos = System.nanoTime() - start;
+            stats.scanned(Stats.utf8Length(source), tokens.size(), nanos);
+        }
+        return tokens;
+    }
+
+    // Optimizes a parsed tree and merges its identical subtrees, if this session is meant to
+    private ParseCache.Entry prepare(Expression expression) {
+        int removedNodes = 0;
+        if (optimize) {
+            long start = stats == null ? 0 : System.nanoTime();
+            Optimizer optimizer = new Optimizer();
+            expression = optimizer.optimize(expression);
+            removedNodes = optimizer.removedNodes();
+            if (stats != null) {
+                stats.optimized(System.nanoTime() - start);
+            }
+        }
+        if (share) {
+            HashConser conser = new HashConser();
+            expression = conser.share(expression);
+            return new ParseCache.Entry(expression, removedNodes, conser.mergedNodes(), conser.seenNodes());
+        }
+        return new ParseCache.Entry(expression, removedNodes);
+    }
+}
@@ -0,0 +1,265 @@
+package lox;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Counts what every phase of running Lox code did and how long it took, across all the Sessions that share it.
+// Sessions only record at the boundaries between phases, and only when they were given a Stats, so leaving
+// --stats off costs one null check per phase and nothing per token or node.
+//
+// Since nothing is counted per node, the node counts are the sizes of whole trees: "parsed tree nodes" of the
+// trees parsing returned, which is none for a source with syntax errors, and "finished tree nodes" of the
+// trees that ran to the end without a runtime error. Neither is how many nodes an evaluator actually visited,
+// which is fewer with --share, and some part of the tree when a runtime error stops it
+class Stats implements StatsMBean {
+    static final String NAME = "lox:type=Stats";
+
+    private final LongAdder sources = new LongAdder();
+    private final LongAdder sourceBytes = new LongAdder();
+    private final LongAdder tokensScanned = new LongAdder();
+    private final LongAdder parsedTreeNodes = new LongAdder();
+    private final LongAdder finishedTreeNodes = new LongAdder();
+    private final LongAdder syntaxErrors = new LongAdder();
+    private final LongAdder runtimeErrors = new LongAdder();
+    private final LongAdder scanNanos = new LongAdder();
+    private final LongAdder parseNanos = new LongAdder();
+    private final LongAdder optimizeNanos = new LongAdder();
+    private final LongAdder evaluateNanos = new LongAdder();
+
+    // The --cache the Sessions share, if any. It keeps its own counts
+    private volatile ParseCache cache;
+
+    // Makes these counters readable over JMX while the program runs, e.g. from jconsole
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(NAME));
+        } catch (JMException error) {
+            throw new IllegalStateException("Could not register " + NAME + ".", error);
+        }
+    }
+
+    // Reports how "cache" does along with everything else
+    void watch(ParseCache cache) {
+        this.cache = cache;
+    }
+
+    void scanned(long sourceBytes, int tokens, long nanos) {
+        sources.increment();
+        this.sourceBytes.add(sourceBytes);
+        tokensScanned.add(tokens);
+        scanNanos.add(nanos);
+    }
+
+    void parsed(int treeNodes, long nanos) {
+        parsedTreeNodes.add(treeNodes);
+        parseNanos.add(nanos);
+    }
+
+    void optimized(long nanos) {
+        optimizeNanos.add(nanos);
+    }
+
+    // "treeNodes" is 0 if the evaluation was stopped by a runtime error
+    void evaluated(int treeNodes, long nanos) {
+        finishedTreeNodes.add(treeNodes);
+        evaluateNanos.add(nanos);
+    }
+
+    void errors(int syntax, int runtime) {
+        syntaxErrors.add(syntax);
+        runtimeErrors.add(runtime);
+    }
+
+    @Override
+    public long getSources() {
+        return sources.sum();
+    }
+
+    @Override
+    public long getSourceBytes() {
+        return sourceBytes.sum();
+    }
+
+    @Override
+    public long getTokensScanned() {
+        return tokensScanned.sum();
+    }
+
+    @Override
+    public long getParsedTreeNodes() {
+        return parsedTreeNodes.sum();
+    }
+
+    @Override
+    public long getFinishedTreeNodes() {
+        return finishedTreeNodes.sum();
+    }
+
+    @Override
+    public long getSyntaxErrors() {
+        return syntaxErrors.sum();
+    }
+
+    @Override
+    public long getRuntimeErrors() {
+        return runtimeErrors.sum();
+    }
+
+    @Override
+    public long getScanNanos() {
+        return scanNanos.sum();
+    }
+
+    @Override
+    public long getParseNanos() {
+        return parseNanos.sum();
+    }
+
+    @Override
+    public long getOptimizeNanos() {
+        return optimizeNanos.sum();
+    }
+
+    @Override
+    public long getEvaluateNanos() {
+        return evaluateNanos.sum();
+    }
+
+    @Override
+    public long getCacheHits() {
+        ParseCache cache = this.cache;
+        return cache == null ? 0 : cache.hits();
+    }
+
+    @Override
+    public long getCacheMisses() {
+        ParseCache cache = this.cache;
+        return cache == null ? 0 : cache.misses();
+    }
+
+    @Override
+    public long getCacheEvictions() {
+        ParseCache cache = this.cache;
+        return cache == null ? 0 : cache.evictions();
+    }
+
+    @Override
+    public int getCacheEntries() {
+        ParseCache cache = this.cache;
+        return cache == null ? 0 : cache.size();
+    }
+
+    @Override
+    public long getCacheBytes() {
+        ParseCache cache = this.cache;
+        return cache == null ? 0 : cache.bytes();
+    }
+
+    @Override
+    public void reset() {
+        LongAdder[] counters = {sources, sourceBytes, tokensScanned, parsedTreeNodes, finishedTreeNodes,
+                syntaxErrors, runtimeErrors, scanNanos, parseNanos, optimizeNanos, evaluateNanos};
+        for (LongAdder counter : counters) {
+            counter.reset();
+        }
+        ParseCache cache = this.cache;
+        if (cache != null) {
+            cache.resetCounts();
+        }
+    }
+
+    // Prints the --stats summary
+    void print(PrintStream out) {
+        out.println("== stats ==");
+        out.println("sources:             " + getSources() + " (" + getSourceBytes() + " bytes of UTF-8)");
+        out.println("tokens scanned:      " + getTokensScanned());
+        out.println("parsed tree nodes:   " + getParsedTreeNodes());
+        out.println("finished tree nodes: " + getFinishedTreeNodes());
+        out.println("syntax errors:       " + getSyntaxErrors());
+        out.println("runtime errors:      " + getRuntimeErrors());
+        out.println("scan:                " + millis(getScanNanos()) + " ms");
+        out.println("parse:               " + millis(getParseNanos()) + " ms");
+        out.println("optimize:            " + millis(getOptimizeNanos()) + " ms");
+        out.println("evaluate:            " + millis(getEvaluateNanos()) + " ms");
+        if (cache != null) {
+            out.println("cache hits:          " + getCacheHits());
+            out.println("cache misses:        " + getCacheMisses());
+            out.println("cache evictions:     " + getCacheEvictions());
+            out.println("cache entries:       " + getCacheEntries() + " (about " + getCacheBytes() + " bytes)");
+        }
+    }
+
+    private static String millis(long nanos) {
+        return String.format("%.3f", nanos / (double)TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    // How many bytes source code takes as UTF-8, whether it's a String or already a Utf8Source's bytes
+    static long utf8Length(CharSequence source) {
+        if (source instanceof Utf8Source) {
+            return source.length();
+        }
+        long bytes = 0;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isSurrogate(c)) {
+                // A pair is one 4 byte character. A lone surrogate encodes as the 1 byte "?"
+                boolean pair = Character.isHighSurrogate(c) && i + 1 < source.length()
+                        && Character.isLowSurrogate(source.charAt(i + 1));
+                bytes += pair ? 4 : 1;
+                if (pair) {
+                    i++;
+                }
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // Counts the nodes in a tree
+    static int countNodes(Expression expression) {
+        return new NodeCounter().dispatch(expression);
+    }
+
+    // Counts the nodes in an arena
+    static int countNodes(ExpressionArena arena) {
+        int nodes = 0;
+        for (int node = 0; node < arena.end(); node = arena.next(node)) {
+            nodes++;
+        }
+        return nodes;
+    }
+
+    private static class NodeCounter extends ExpressionSwitch<Integer> {
+        @Override
+        public Integer visitBinaryExpression(Expression.Binary expression) {
+            return 1 + dispatch(expression.left) + dispatch(expression.right);
+        }
+
+        @Override
+        public Integer visitGroupingExpression(Expression.Grouping expression) {
+            return 1 + dispatch(expression.expression);
+        }
+
+        @Override
+        public Integer visitLiteralExpression(Expression.Literal expression) {
+            return 1;
+        }
+
+        @Override
+        public Integer visitUnaryExpression(Expression.Unary expression) {
+            return 1 + dispatch(expression.right);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package lox;
+
+// What Stats shows over JMX, under the name "lox:type=Stats". Times are in nanoseconds, and tree nodes are
+// counted in tree form, so a subtree --share merged still counts once per place it appears
+public interface StatsMBean {
+    long getSources();
+    long getSourceBytes();
+    long getTokensScanned();
+    long getParsedTreeNodes();
+    long getFinishedTreeNodes();
+    long getSyntaxErrors();
+    long getRuntimeErrors();
+    long getScanNanos();
+    long getParseNanos();
+    long getOptimizeNanos();
+    long getEvaluateNanos();
+
+    // How --cache did, all 0 when it's off
+    long getCacheHits();
+    long getCacheMisses();
+    long getCacheEvictions();
+    int getCacheEntries();
+    long getCacheBytes();
+
+    // Starts every counter again from zero
+    void reset();
+}
@@ -0,0 +1,220 @@
+package lox;
+
+import java.util.Arrays;
+
+// The Scanner's output, stored as parallel primitive arrays instead of one Token object per token.
+// A token is just its index. Literal values live in a side table, since most tokens don't have one,
+// and a token's text is only copied out of the source when something asks for its lexeme
+class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+
+    private final CharSequence source;
+
+    private byte[] types = new byte[64];
+    private int[] starts = new int[64];
+    private int[] lengths = new int[64];
+    private int[] lines = new int[64];
+    private int count = 0;
+
+    // The literal tokens (numbers and strings) in increasing index order, and their values
+    private int[] literalTokens = new int[16];
+    private Object[] literalValues = new Object[16];
+    private int literalCount = 0;
+
+    TokenBuffer(CharSequence source) {
+        this.source = source;
+    }
+
+    void add(TokenType type, int start, int length, int line, Object literal) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+        }
+
+        if (literal != null) {
+            if (literalCount == literalTokens.length) {
+                literalTokens = Arrays.copyOf(literalTokens, literalCount * 2);
+                literalValues = Arrays.copyOf(literalValues, literalCount * 2);
+            }
+            literalTokens[literalCount] = count;
+            literalValues[literalCount++] = literal;
+        }
+
+        types[count] = (byte)type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    TokenType type(int token) {
+        return TYPES[types[token]];
+    }
+
+    // Where the token's text starts in the source, and how many chars it takes up
+    int start(int token) {
+        return starts[token];
+    }
+
+    int length(int token) {
+        return lengths[token];
+    }
+
+    int line(int token) {
+        return lines[token];
+    }
+
+    // Returns the value of a number or string token, or null for every other token
+    Object literal(int token) {
+        TokenType type = type(token);
+        if (type != TokenType.NUMBER && type != TokenType.STRING) {
+            return null;
+        }
+
+        int index = Arrays.binarySearch(literalTokens, 0, literalCount, token);
+        if (index < 0) {
+            return null;
+        }
+        return literalValues[index];
+    }
+
+    // Returns the token's text, only copying it out of the source when it isn't always spelled the same way
+    String lexeme(int token) {
+        String lexeme = Scanner.lexeme(type(token));
+        if (lexeme != null) {
+            return lexeme;
+        }
+        return source.subSequence(starts[token], starts[token] + lengths[token]).toString();
+    }
+
+    // Creates a Token object for callers that need one, like the AST or error reporting
+    Token token(int token) {
+        return new Token(type(token), lexeme(token), literal(token), lines[token]);
+    }
+
+    // The token that starts at "start", or -1 if none does
+    int tokenAt(int start) {
+        int index = Arrays.binarySearch(starts, 0, count, start);
+        return index < 0 ? -1 : index;
+    }
+
+    // The last token that starts before "position", or -1 if none does
+    int tokenBefore(int position) {
+        int index = Arrays.binarySearch(starts, 0, count, position);
+        return (index < 0 ? -index - 1 : index) - 1;
+    }
+
+    // Returns the tokens of edited source: this buffer's tokens before "from", then all of "replacement",
+    // which was scanned from the edited source, then this buffer's tokens from "to" on, moved along by the
+    // chars and lines the edit added. Never looks at the source again. When the edit didn't change how many
+    // tokens there are, the new buffer takes over this one's arrays, and this one mustn't be used any more
+    TokenBuffer splice(CharSequence source, int from, int to, TokenBuffer replacement, int startDelta, int lineDelta) {
+        TokenBuffer spliced = new TokenBuffer(source);
+        int added = replacement.count;
+        if (added == to - from) {
+            spliceInPlace(spliced, from, replacement, startDelta, lineDelta);
+            return spliced;
+        }
+
+        int tail = count - to;
+        int size = from + added + tail;
+        spliced.types = new byte[Math.max(size, 1)];
+        spliced.starts = new int[Math.max(size, 1)];
+        spliced.lengths = new int[Math.max(size, 1)];
+        spliced.lines = new int[Math.max(size, 1)];
+        spliced.count = size;
+
+        System.arraycopy(types, 0, spliced.types, 0, from);
+        System.arraycopy(starts, 0, spliced.starts, 0, from);
+        System.arraycopy(lengths, 0, spliced.lengths, 0, from);
+        System.arraycopy(lines, 0, spliced.lines, 0, from);
+
+        System.arraycopy(replacement.types, 0, spliced.types, from, added);
+        System.arraycopy(replacement.starts, 0, spliced.starts, from, added);
+        System.arraycopy(replacement.lengths, 0, spliced.lengths, from, added);
+        System.arraycopy(replacement.lines, 0, spliced.lines, from, added);
+
+        int moved = from + added;
+        System.arraycopy(types, to, spliced.types, moved, tail);
+        System.arraycopy(lengths, to, spliced.lengths, moved, tail);
+        for (int i = 0; i < tail; i++) {
+            spliced.starts[moved + i] = starts[to + i] + startDelta;
+            spliced.lines[moved + i] = lines[to + i] + lineDelta;
+        }
+
+        int literals = literalCount + replacement.literalCount;
+        spliced.literalTokens = new int[Math.max(literals, 1)];
+        spliced.literalValues = new Object[Math.max(literals, 1)];
+        int kept = 0;
+        for (int i = 0; i < literalCount && literalTokens[i] < from; i++) {
+            spliced.literalTokens[kept] = literalTokens[i];
+            spliced.literalValues[kept++] = literalValues[i];
+        }
+        for (int i = 0; i < replacement.literalCount; i++) {
+            spliced.literalTokens[kept] = replacement.literalTokens[i] + from;
+            spliced.literalValues[kept++] = replacement.literalValues[i];
+        }
+        for (int i = 0; i < literalCount; i++) {
+            if (literalTokens[i] >= to) {
+                spliced.literalTokens[kept] = literalTokens[i] - to + moved;
+                spliced.literalValues[kept++] = literalValues[i];
+            }
+        }
+        spliced.literalCount = kept;
+
+        return spliced;
+    }
+
+    private void spliceInPlace(TokenBuffer spliced, int from, TokenBuffer replacement, int startDelta, int lineDelta) {
+        int added = replacement.count;
+        System.arraycopy(replacement.types, 0, types, from, added);
+        System.arraycopy(replacement.starts, 0, starts, from, added);
+        System.arraycopy(replacement.lengths, 0, lengths, from, added);
+        System.arraycopy(replacement.lines, 0, lines, from, added);
+        if (startDelta != 0 || lineDelta != 0) {
+            for (int i = from + added; i < count; i++) {
+                starts[i] += startDelta;
+                lines[i] += lineDelta;
+            }
+        }
+
+        // Swaps the literals of the replaced tokens for the replacement's, which are at the same indices
+        int first = literalIndex(from);
+        int end = literalIndex(from + added);
+        int grown = literalCount - (end - first) + replacement.literalCount;
+        if (grown > literalTokens.length) {
+            literalTokens = Arrays.copyOf(literalTokens, Math.max(grown, literalTokens.length * 2));
+            literalValues = Arrays.copyOf(literalValues, literalTokens.length);
+        }
+        System.arraycopy(literalTokens, end, literalTokens, first + replacement.literalCount, literalCount - end);
+        System.arraycopy(literalValues, end, literalValues, first + replacement.literalCount, literalCount - end);
+        for (int i = 0; i < replacement.literalCount; i++) {
+            literalTokens[first + i] = replacement.literalTokens[i] + from;
+            literalValues[first + i] = replacement.literalValues[i];
+        }
+        Arrays.fill(literalValues, grown, literalCount > grown ? literalCount : grown, null);
+        literalCount = grown;
+
+        spliced.types = types;
+        spliced.starts = starts;
+        spliced.lengths = lengths;
+        spliced.lines = lines;
+        spliced.count = count;
+        spliced.literalTokens = literalTokens;
+        spliced.literalValues = literalValues;
+        spliced.literalCount = literalCount;
+    }
+
+    // Where the first literal at or after "token" is in the literal table
+    private int literalIndex(int token) {
+        int index = Arrays.binarySearch(literalTokens, 0, literalCount, token);
+        return index < 0 ? -index - 1 : index;
+    }
+}
@@ -0,0 +1,169 @@
+package lox;
+
+// Evaluates expressions with the same rules as the Interpreter, but without boxing numbers along the way.
+// Instead of returning values, each visit leaves its result in the fields below, where the caller
+// reads it before evaluating anything else. Booleans use the shared Boolean.TRUE and Boolean.FALSE,
+// so an expression that only works with numbers and booleans never allocates.
+// Concatenated strings are kept as Ropes until result() flattens them. Like the Interpreter, it walks the
+// tree by switching on each node's kind (see ExpressionSwitch) rather than through accept()
+class UnboxedEvaluator extends ExpressionSwitch<Void> {
+    // The result of the last evaluated expression: a number when isNumber is set,
+    // otherwise nil, a Boolean, a String or a Rope in value (which is stale while isNumber is set)
+    boolean isNumber;
+    double number;
+    Object value;
+
+    void evaluate(Expression expression) {
+        dispatch(expression);
+    }
+
+    // Boxes the result of the last evaluated expression
+    Object result() {
+        if (isNumber) {
+            return number;
+        }
+        return Rope.flatten(value);
+    }
+
+    @Override
+    public Void visitLiteralExpression(Expression.Literal expression) {
+        Object literal = expression.value;
+
+        if (literal instanceof Double) {
+            isNumber = true;
+            number = (Double)literal;
+        } else {
+            isNumber = false;
+            value = literal;
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpression(Expression.Grouping expression) {
+        return dispatch(expression.expression);
+    }
+
+    @Override
+    public Void visitUnaryExpression(Expression.Unary expression) {
+        dispatch(expression.right);
+
+        switch (expression.operator.type) {
+            case MINUS:
+                if (!isNumber) {
+                    throw new RuntimeError(expression.operator, "Operand must be a number.");
+                }
+                number = -number;
+                break;
+            case BANG:
+                setBoolean(!isTruthy());
+                break;
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpression(Expression.Binary expression) {
+        // Keeps the left operand in locals while the right one overwrites the fields
+        dispatch(expression.left);
+        boolean leftIsNumber = isNumber;
+        double leftNumber = number;
+        Object leftValue = value;
+
+        dispatch(expression.right);
+
+        switch (expression.operator.type) {
+            case PLUS:
+                if (leftIsNumber && isNumber) {
+                    number = leftNumber + number;
+                    break;
+                }
+                if (!leftIsNumber && !isNumber && Rope.isString(leftValue) && Rope.isString(value)) {
+                    value = Rope.concat(leftValue, value);
+                    break;
+                }
+                throw new RuntimeError(expression.operator, "Operands must be two numbers or two strings.");
+            case MINUS:
+                checkNumberOperands(expression.operator, leftIsNumber);
+                number = leftNumber - number;
+                break;
+            case STAR:
+                checkNumberOperands(expression.operator, leftIsNumber);
+                number = leftNumber * number;
+                break;
+            case SLASH:
+                checkNumberOperands(expression.operator, leftIsNumber);
+                number = leftNumber / number;
+                break;
+            case GREATER:
+                checkNumberOperands(expression.operator, leftIsNumber);
+                setBoolean(leftNumber > number);
+                break;
+            case GREATER_EQUAL:
+                checkNumberOperands(expression.operator, leftIsNumber);
+                setBoolean(leftNumber >= number);
+                break;
+            case LESS:
+                checkNumberOperands(expression.operator, leftIsNumber);
+                setBoolean(leftNumber < number);
+                break;
+            case LESS_EQUAL:
+                checkNumberOperands(expression.operator, leftIsNumber);
+                setBoolean(leftNumber <= number);
+                break;
+            case BANG_EQUAL:
+                setBoolean(!isEqual(leftIsNumber, leftNumber, leftValue));
+                break;
+            case EQUAL_EQUAL:
+                setBoolean(isEqual(leftIsNumber, leftNumber, leftValue));
+                break;
+        }
+
+        return null;
+    }
+
+    private void checkNumberOperands(Token operator, boolean leftIsNumber) {
+        if (leftIsNumber && isNumber) {
+            return;
+        }
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+
+    private void setBoolean(boolean result) {
+        isNumber = false;
+        value = result ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    // Same rules as Interpreter.isTruthy, applied to the last result
+    boolean isTruthy() {
+        if (isNumber) {
+            return true;
+        }
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean)value;
+        }
+        return true;
+    }
+
+    // Same rules as Interpreter.isEqual, comparing a left operand to the last result.
+    // Numbers are compared like Double.equals, so NaN equals itself and 0 doesn't equal -0
+    private boolean isEqual(boolean leftIsNumber, double leftNumber, Object leftValue) {
+        if (leftIsNumber || isNumber) {
+            return leftIsNumber && isNumber &&
+                    Double.doubleToLongBits(leftNumber) == Double.doubleToLongBits(number);
+        }
+
+        if (leftValue == value) {
+            return true;
+        }
+        if (leftValue == null) {
+            return false;
+        }
+        return Rope.flatten(leftValue).equals(Rope.flatten(value));
+    }
+}
@@ -0,0 +1,73 @@
+package lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Lets the Scanner read UTF-8 source code straight out of a ByteBuffer (usually a memory-mapped file)
+// instead of a decoded String. Every byte is presented as one char. That's enough for scanning, because
+// everything Lox gives meaning to is ASCII, and the bytes of a multi-byte UTF-8 character are never ASCII.
+// Only the ranges the Scanner turns into lexemes and string literals are actually decoded.
+//
+// As a CharSequence it's the bytes: length(), charAt() and subSequence() all count bytes, and only
+// toString() and decode() give back real text, which is shorter wherever there are multi-byte characters
+class Utf8Source implements CharSequence {
+    private final ByteBuffer bytes;
+    private final int offset;
+    private final int length;
+
+    Utf8Source(ByteBuffer bytes) {
+        this(bytes, bytes.position(), bytes.remaining());
+    }
+
+    private Utf8Source(ByteBuffer bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    // Whether a byte continues a multi-byte character rather than starting a new one
+    static boolean isContinuation(char c) {
+        return (c & 0xC0) == 0x80;
+    }
+
+    // The source's bytes, as a new buffer that can be read without disturbing this one
+    ByteBuffer bytes() {
+        ByteBuffer view = bytes.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char)(bytes.get(offset + index) & 0xFF);
+    }
+
+    // The bytes between start and end, still undecoded
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("Bytes " + start + " to " + end + " are outside the source.");
+        }
+        return new Utf8Source(bytes, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return decode(0, length);
+    }
+
+    // Decodes the bytes between start and end. The Scanner only ever calls this on whole characters
+    String decode(int start, int end) {
+        byte[] text = new byte[end - start];
+        for (int i = 0; i < text.length; i++) {
+            text[i] = bytes.get(offset + start + i);
+        }
+        return new String(text, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,220 @@
+package lox;
+
+import java.io.PrintStream;
+
+// Runs compiled Chunks. Values live on an operand stack made of parallel primitive arrays, so
+// numbers and booleans are never boxed until the final result is handed back.
+// A VM reuses its stack between runs and so must only be used by one thread at a time
+class VM {
+    // The type of each stack slot
+    private static final byte NIL = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte NUMBER = 2;
+    private static final byte STRING = 3;
+
+    private byte[] types = new byte[0];
+    // Holds numbers, and booleans as 1 or 0
+    private double[] numbers = new double[0];
+    private String[] strings = new String[0];
+
+    // Where interpret() prints values and runtime errors
+    private final PrintStream out;
+    private final ErrorReporter reporter;
+
+    VM() {
+        this(System.out, new ErrorReporter(System.err));
+    }
+
+    VM(PrintStream out, ErrorReporter reporter) {
+        this.out = out;
+        this.reporter = reporter;
+    }
+
+    // Runs a chunk and prints its value, or reports the runtime error that stopped it
+    void interpret(Chunk chunk) {
+        try {
+            Object value = run(chunk);
+            out.println(Interpreter.stringify(value));
+        } catch (RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
+
+    // Runs a chunk and returns its value, boxed the same way the Interpreter would have returned it
+    Object run(Chunk chunk) {
+        ensureStackSize(chunk.maxStackSize);
+
+        byte[] types = this.types;
+        double[] numbers = this.numbers;
+        String[] strings = this.strings;
+        byte[] code = chunk.code;
+
+        int ip = 0;
+        // Index of the next free stack slot
+        int top = 0;
+
+        for (;;) {
+            byte instruction = code[ip++];
+
+            switch (instruction) {
+                case OpCode.NUMBER:
+                    types[top] = NUMBER;
+                    numbers[top++] = chunk.numbers[readIndex(code, ip)];
+                    ip += 3;
+                    break;
+                case OpCode.STRING:
+                    types[top] = STRING;
+                    strings[top++] = chunk.strings[readIndex(code, ip)];
+                    ip += 3;
+                    break;
+                case OpCode.NIL:
+                    types[top++] = NIL;
+                    break;
+                case OpCode.TRUE:
+                    types[top] = BOOLEAN;
+                    numbers[top++] = 1;
+                    break;
+                case OpCode.FALSE:
+                    types[top] = BOOLEAN;
+                    numbers[top++] = 0;
+                    break;
+
+                case OpCode.NEGATE:
+                    if (types[top - 1] != NUMBER) {
+                        throw new RuntimeError(chunk.tokens[ip - 1], "Operand must be a number.");
+                    }
+                    numbers[top - 1] = -numbers[top - 1];
+                    break;
+                case OpCode.NOT:
+                    numbers[top - 1] = isTruthy(types[top - 1], numbers[top - 1]) ? 0 : 1;
+                    types[top - 1] = BOOLEAN;
+                    break;
+
+                case OpCode.ADD:
+                    top--;
+                    if (types[top - 1] == NUMBER && types[top] == NUMBER) {
+                        numbers[top - 1] += numbers[top];
+                    } else if (types[top - 1] == STRING && types[top] == STRING) {
+                        strings[top - 1] = strings[top - 1] + strings[top];
+                        strings[top] = null;
+                    } else {
+                        throw new RuntimeError(chunk.tokens[ip - 1], "Operands must be two numbers or two strings.");
+                    }
+                    break;
+                case OpCode.SUBTRACT:
+                    top--;
+                    checkNumberOperands(chunk, ip, top);
+                    numbers[top - 1] -= numbers[top];
+                    break;
+                case OpCode.MULTIPLY:
+                    top--;
+                    checkNumberOperands(chunk, ip, top);
+                    numbers[top - 1] *= numbers[top];
+                    break;
+                case OpCode.DIVIDE:
+                    top--;
+                    checkNumberOperands(chunk, ip, top);
+                    numbers[top - 1] /= numbers[top];
+                    break;
+
+                case OpCode.GREATER:
+                    top--;
+                    checkNumberOperands(chunk, ip, top);
+                    setBoolean(top - 1, numbers[top - 1] > numbers[top]);
+                    break;
+                case OpCode.GREATER_EQUAL:
+                    top--;
+                    checkNumberOperands(chunk, ip, top);
+                    setBoolean(top - 1, numbers[top - 1] >= numbers[top]);
+                    break;
+                case OpCode.LESS:
+                    top--;
+                    checkNumberOperands(chunk, ip, top);
+                    setBoolean(top - 1, numbers[top - 1] < numbers[top]);
+                    break;
+                case OpCode.LESS_EQUAL:
+                    top--;
+                    checkNumberOperands(chunk, ip, top);
+                    setBoolean(top - 1, numbers[top - 1] <= numbers[top]);
+                    break;
+                case OpCode.EQUAL:
+                    top--;
+                    setBoolean(top - 1, isEqual(top - 1, top));
+                    break;
+                case OpCode.NOT_EQUAL:
+                    top--;
+                    setBoolean(top - 1, !isEqual(top - 1, top));
+                    break;
+
+                case OpCode.RETURN:
+                    return pop(top - 1);
+
+                default:
+                    throw new IllegalStateException("Unknown instruction " + instruction + " at " + (ip - 1));
+            }
+        }
+    }
+
+    private static int readIndex(byte[] code, int ip) {
+        return (code[ip] & 0xFF) << 16 | (code[ip + 1] & 0xFF) << 8 | (code[ip + 2] & 0xFF);
+    }
+
+    // Same check as Interpreter.checkNumberOperands, for the two slots at the top of the stack
+    private void checkNumberOperands(Chunk chunk, int ip, int right) {
+        if (types[right - 1] != NUMBER || types[right] != NUMBER) {
+            throw new RuntimeError(chunk.tokens[ip - 1], "Operands must be numbers.");
+        }
+    }
+
+    private void setBoolean(int slot, boolean value) {
+        types[slot] = BOOLEAN;
+        numbers[slot] = value ? 1 : 0;
+    }
+
+    // Same rules as Interpreter.isTruthy: nil and false are false, everything else is true
+    private static boolean isTruthy(byte type, double number) {
+        if (type == NIL) {
+            return false;
+        }
+        if (type == BOOLEAN) {
+            return number != 0;
+        }
+        return true;
+    }
+
+    // Same rules as Interpreter.isEqual, which compares numbers with Double.equals,
+    // so NaN equals itself and 0 doesn't equal -0
+    private boolean isEqual(int left, int right) {
+        if (types[left] != types[right]) {
+            return false;
+        }
+
+        switch (types[left]) {
+            case NIL: return true;
+            case BOOLEAN: return numbers[left] == numbers[right];
+            case NUMBER: return Double.doubleToLongBits(numbers[left]) == Double.doubleToLongBits(numbers[right]);
+            default: return strings[left].equals(strings[right]);
+        }
+    }
+
+    // Boxes the value in a stack slot and clears the slot
+    private Object pop(int slot) {
+        switch (types[slot]) {
+            case BOOLEAN: return numbers[slot] != 0;
+            case NUMBER: return numbers[slot];
+            case STRING:
+                String value = strings[slot];
+                strings[slot] = null;
+                return value;
+            default: return null;
+        }
+    }
+
+    private void ensureStackSize(int size) {
+        if (types.length < size) {
+            types = new byte[size];
+            numbers = new double[size];
+            strings = new String[size];
+        }
+    }
+}
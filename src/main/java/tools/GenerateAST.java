@@ -2,6 +2,7 @@ package tools;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -10,12 +11,15 @@ public class GenerateAST {
 
         String outputDir = "/Users/Sarah/Documents/JLoxInterpreter/src/main/java/lox";
 
-        defineAst(outputDir, "Expression", Arrays.asList(
+        List<String> expressionTypes = Arrays.asList(
                 "Binary   : Expression left, Token operator, Expression right",
                 "Grouping : Expression expression",
                 "Literal  : Object value",
                 "Unary    : Token operator, Expression right"
-        ));
+        );
+        defineAst(outputDir, "Expression", expressionTypes);
+        defineSwitch(outputDir, "Expression", expressionTypes);
+        defineArena(outputDir, "Expression", expressionTypes);
     }
 
     private static void defineAst(String outputDir, String baseName, List<String> types) throws IOException {
@@ -27,16 +31,35 @@ public class GenerateAST {
         writer.println("import java.util.List;");
         writer.println();
         writer.println("abstract class " + baseName + " {");
+        writer.println();
+
+        // Kind tags.
+        writer.println("  // Which subclass an expression is, so it can be dispatched on with a switch instead of accept()");
+        int kind = 0;
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println("  static final int " + typeName.toUpperCase() + " = " + kind++ + ";");
+        }
+        writer.println();
 
         defineVisitor(writer, baseName, types);
 
         for (String type : types) {
             String className = type.split(":")[0].trim();
             String fields = type.split(":")[1].trim();
+            writer.println();
             defineType(writer, baseName, className, fields);
 
         }
 
+        // The kind every subclass passes up.
+        writer.println();
+        writer.println("  " + baseName + "(int kind) {");
+        writer.println("    this.kind = kind;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  final int kind;");
+
         // The base accept() method.
         writer.println();
         writer.println("  abstract <R> R accept(Visitor<R> visitor);");
@@ -51,7 +74,7 @@ public class GenerateAST {
 
         // Constructor.
         writer.println("    " + className + "(" + fieldList + ") {");
-
+        writer.println("      super(" + className.toUpperCase() + ");");
 
         // Store parameters in fields.
         String[] fields = fieldList.split(", ");
@@ -91,4 +114,218 @@ public class GenerateAST {
         writer.println("  }");
     }
 
-}
\ No newline at end of file
+    // Writes <baseName>Switch, a template for visitors that dispatch on the kind tag instead of calling accept()
+    private static void defineSwitch(String outputDir, String baseName, List<String> types) throws IOException {
+        String className = baseName + "Switch";
+        String path = outputDir + "/" + className + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        writer.println("package lox;");
+        writer.println();
+        writer.println("// A visitor of " + baseName + " trees that finds the visit method for an expression with a switch on its kind,");
+        writer.println("// rather than with accept() and then a second call back into the visitor. Subclasses recurse with");
+        writer.println("// dispatch() so the only virtual call left per node is to their own visit method");
+        writer.println("abstract class " + className + "<R> implements " + baseName + ".Visitor<R> {");
+        writer.println();
+        writer.println("  final R dispatch(" + baseName + " " + baseName.toLowerCase() + ") {");
+        writer.println("    switch (" + baseName.toLowerCase() + ".kind) {");
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println("      case " + baseName + "." + typeName.toUpperCase() + ": return visit" + typeName + baseName +
+                    "((" + baseName + "." + typeName + ") " + baseName.toLowerCase() + ");");
+        }
+        writer.println("    }");
+        writer.println("    throw new IllegalArgumentException(\"Unknown " + baseName.toLowerCase() + " kind \" + " +
+                baseName.toLowerCase() + ".kind + \".\");");
+        writer.println("  }");
+        writer.println("}");
+        writer.close();
+    }
+
+    // Writes <baseName>Arena, which holds the same types as int runs in one array instead of as objects
+    private static void defineArena(String outputDir, String baseName, List<String> types) throws IOException {
+        String className = baseName + "Arena";
+        String path = outputDir + "/" + className + ".java";
+        PrintWriter writer = new PrintWriter(path, "UTF-8");
+
+        // One pool for each type of field other than the base type, in order of first use
+        List<String> pools = new ArrayList<>();
+        for (String type : types) {
+            for (String field : type.split(":")[1].trim().split(", ")) {
+                String fieldType = field.split(" ")[0];
+                if (!fieldType.equals(baseName) && !pools.contains(fieldType)) {
+                    pools.add(fieldType);
+                }
+            }
+        }
+
+        writer.println("package lox;");
+        writer.println();
+        writer.println("import java.util.Arrays;");
+        writer.println();
+        writer.println("// The same nodes as " + baseName + ", stored flat. A node is the index of a run of ints in one array:");
+        writer.println("// its kind, then one slot per field. A child " + baseName + " is stored as the index of the child");
+        writer.println("// node, and any other field as an index into a pool of values of that type. Nodes can only refer");
+        writer.println("// to nodes that already exist, so children always come before their parents");
+        writer.println("final class " + className + " {");
+        writer.println();
+
+        int kind = 0;
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println("  static final int " + typeName.toUpperCase() + " = " + kind++ + ";");
+        }
+
+        // Node widths, indexed by kind
+        StringBuilder widths = new StringBuilder();
+        for (String type : types) {
+            if (widths.length() > 0) {
+                widths.append(", ");
+            }
+            widths.append(1 + type.split(":")[1].trim().split(", ").length);
+        }
+        writer.println();
+        writer.println("  // How many ints each kind of node takes, including its kind");
+        writer.println("  private static final int[] WIDTHS = {" + widths + "};");
+
+        writer.println();
+        writer.println("  interface Visitor<R> {");
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println("    R visit" + typeName + baseName + "(" + className + " arena, int node);");
+        }
+        writer.println("  }");
+
+        writer.println();
+        writer.println("  private int[] nodes;");
+        writer.println("  private int size = 0;");
+        writer.println("  private int last = -1;");
+        for (String pool : pools) {
+            String name = poolName(pool);
+            writer.println("  private " + pool + "[] " + name + ";");
+            writer.println("  private int " + name + "Count = 0;");
+        }
+
+        writer.println();
+        writer.println("  " + className + "() {");
+        writer.println("    this(64, 16);");
+        writer.println("  }");
+        writer.println();
+        writer.println("  // Makes room for \"ints\" ints of nodes and \"values\" values in each pool before anything has to grow");
+        writer.println("  " + className + "(int ints, int values) {");
+        writer.println("    nodes = new int[Math.max(ints, 8)];");
+        for (String pool : pools) {
+            writer.println("    " + poolName(pool) + " = new " + pool + "[Math.max(values, 8)];");
+        }
+        writer.println("  }");
+
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            String[] fields = type.split(":")[1].trim().split(", ");
+
+            // Builder
+            StringBuilder parameters = new StringBuilder();
+            for (String field : fields) {
+                String fieldType = field.split(" ")[0];
+                if (parameters.length() > 0) {
+                    parameters.append(", ");
+                }
+                parameters.append(fieldType.equals(baseName) ? "int" : fieldType).append(' ').append(field.split(" ")[1]);
+            }
+            writer.println();
+            writer.println("  int " + decapitalize(typeName) + "(" + parameters + ") {");
+            writer.println("    int node = allocate(" + typeName.toUpperCase() + ");");
+            for (int i = 0; i < fields.length; i++) {
+                String fieldType = fields[i].split(" ")[0];
+                String name = fields[i].split(" ")[1];
+                String value = fieldType.equals(baseName) ? name : "add" + fieldType + "(" + name + ")";
+                writer.println("    nodes[node + " + (i + 1) + "] = " + value + ";");
+            }
+            writer.println("    return node;");
+            writer.println("  }");
+
+            // Accessors
+            for (int i = 0; i < fields.length; i++) {
+                String fieldType = fields[i].split(" ")[0];
+                String name = fields[i].split(" ")[1];
+                String accessor = decapitalize(typeName) + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+                writer.println();
+                if (fieldType.equals(baseName)) {
+                    writer.println("  int " + accessor + "(int node) {");
+                    writer.println("    return nodes[node + " + (i + 1) + "];");
+                } else {
+                    writer.println("  " + fieldType + " " + accessor + "(int node) {");
+                    writer.println("    return " + poolName(fieldType) + "[nodes[node + " + (i + 1) + "]];");
+                }
+                writer.println("  }");
+            }
+        }
+
+        writer.println();
+        writer.println("  int kind(int node) {");
+        writer.println("    return nodes[node];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  // The node stored right after this one, which is the end of the arena for the last node");
+        writer.println("  int next(int node) {");
+        writer.println("    return node + WIDTHS[nodes[node]];");
+        writer.println("  }");
+        writer.println();
+        writer.println("  // The index just past the last node, so nodes are found from 0 up to here with next()");
+        writer.println("  int end() {");
+        writer.println("    return size;");
+        writer.println("  }");
+        writer.println();
+        writer.println("  // The node added last, which is the root when the arena holds one tree built bottom up");
+        writer.println("  int root() {");
+        writer.println("    return last;");
+        writer.println("  }");
+
+        writer.println();
+        writer.println("  <R> R accept(int node, Visitor<R> visitor) {");
+        writer.println("    switch (nodes[node]) {");
+        for (String type : types) {
+            String typeName = type.split(":")[0].trim();
+            writer.println("      case " + typeName.toUpperCase() + ": return visitor.visit" + typeName + baseName + "(this, node);");
+        }
+        writer.println("    }");
+        writer.println("    throw new IllegalArgumentException(\"No node at \" + node + \".\");");
+        writer.println("  }");
+
+        writer.println();
+        writer.println("  private int allocate(int kind) {");
+        writer.println("    int node = size;");
+        writer.println("    if (size + WIDTHS[kind] > nodes.length) {");
+        writer.println("      nodes = Arrays.copyOf(nodes, nodes.length * 2);");
+        writer.println("    }");
+        writer.println("    nodes[node] = kind;");
+        writer.println("    size += WIDTHS[kind];");
+        writer.println("    last = node;");
+        writer.println("    return node;");
+        writer.println("  }");
+
+        for (String pool : pools) {
+            String name = poolName(pool);
+            writer.println();
+            writer.println("  private int add" + pool + "(" + pool + " value) {");
+            writer.println("    if (" + name + "Count == " + name + ".length) {");
+            writer.println("      " + name + " = Arrays.copyOf(" + name + ", " + name + "Count * 2);");
+            writer.println("    }");
+            writer.println("    " + name + "[" + name + "Count] = value;");
+            writer.println("    return " + name + "Count++;");
+            writer.println("  }");
+        }
+
+        writer.println("}");
+        writer.close();
+    }
+
+    private static String decapitalize(String name) {
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    // Token values live in "tokens", Object values in "objects"
+    private static String poolName(String type) {
+        return decapitalize(type) + "s";
+    }
+}
@@ -0,0 +1,72 @@
+package lox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+// Checks that a session with --arena prints the same values, runtime errors and syntax errors as one walking
+// the tree with the Interpreter
+public class ArenaEvaluatorTest {
+    // Pieces random sources are made of, chosen to make every operator, operand type, runtime error and
+    // syntax error, over more than one line
+    private static final String[] PIECES = {
+            "1", "23", "4.5", "0", "-0", " ", "\n", "+", "-", "*", "/", "!", "==", "!=", "<", "<=", ">", ">=",
+            "(", ")", "\"ab\"", "\"\"", "true", "false", "nil", "@"
+    };
+
+    @Test
+    public void randomSourcesMatchTheInterpreter() {
+        Random random = new Random(15);
+        for (int i = 0; i < 20_000; i++) {
+            StringBuilder source = new StringBuilder();
+            for (int pieces = random.nextInt(20); pieces > 0; pieces--) {
+                source.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            assertSameOutput(source.toString());
+        }
+    }
+
+    @Test
+    public void deepAndWideSourcesMatchTheInterpreter() {
+        assertSameOutput("1 + 2 * 3 - 4 / (5 - 5) == -nil");
+        assertSameOutput("\"a\" + \"b\" + \"c\" == \"abc\"");
+        assertSameOutput("1 +\n2 +\n\"x\" *\n3");
+        StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            nested.append("(-").append(i).append(" + ");
+        }
+        nested.append('0');
+        for (int i = 0; i < 500; i++) {
+            nested.append(')');
+        }
+        assertSameOutput(nested.toString());
+    }
+
+    @Test
+    public void treesFromElsewhereAreFlattened() {
+        String source = "(1 + 2) * -3 >= 4\n== !true";
+        Expression tree = new PrattParser(new Scanner(source).scanTokens()).parse();
+        assertEquals(output(false, session -> session.run(tree)), output(true, session -> session.run(tree)));
+    }
+
+    private static void assertSameOutput(String source) {
+        String expected = output(false, session -> session.run(source));
+        assertEquals(source, expected, output(true, session -> session.run(source)));
+    }
+
+    // Everything a fresh session printed to its output and errors while doing "run"
+    private static String output(boolean arena, Consumer<Session> run) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(buffer);
+        Session session = new Session(stream, stream);
+        session.arena = arena;
+        run.accept(session);
+        stream.flush();
+        return buffer.toString();
+    }
+}
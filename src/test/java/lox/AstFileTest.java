@@ -0,0 +1,160 @@
+package lox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+// Checks that .loxc files load back as the tree they were written from, and that damaged ones are rejected
+// with a FormatException rather than loading wrong or failing some other way
+public class AstFileTest {
+    @Test
+    public void randomTreesRoundTrip() throws IOException {
+        // RandomTrees numbers lines in the order operators are made, which is not the prefix order they're
+        // written in, so the LINE deltas go both up and down
+        RandomTrees trees = new RandomTrees(13);
+        for (int i = 0; i < 2000; i++) {
+            Expression tree = trees.any(1 + i % 7);
+            byte[] file = write(tree);
+            assertEquals(describe(tree), describe(AstFile.read(ByteBuffer.wrap(file))));
+            assertEquals(describe(tree), describe(AstFile.read(new ByteArrayInputStream(file))));
+            assertEquals(describe(tree), describe(AstFile.read(new Trickle(file))));
+        }
+    }
+
+    @Test
+    public void linesFarApartRoundTrip() throws IOException {
+        Expression tree = new Expression.Binary(
+                new Expression.Unary(token(TokenType.MINUS, 100000), new Expression.Literal(1.0)),
+                token(TokenType.PLUS, 3),
+                new Expression.Binary(new Expression.Literal("a"), token(TokenType.EQUAL_EQUAL, 1),
+                        new Expression.Literal("a")));
+        assertEquals(describe(tree), describe(AstFile.read(ByteBuffer.wrap(write(tree)))));
+    }
+
+    @Test
+    public void zeroAndNegativeZeroStayApart() throws IOException {
+        Expression tree = new Expression.Binary(new Expression.Literal(-0.0), token(TokenType.EQUAL_EQUAL, 1),
+                new Expression.Binary(new Expression.Literal(0.0), token(TokenType.PLUS, 1),
+                        new Expression.Literal(-0.0)));
+        Expression.Binary read = (Expression.Binary)AstFile.read(ByteBuffer.wrap(write(tree)));
+        Expression.Binary right = (Expression.Binary)read.right;
+        assertEquals(Double.doubleToRawLongBits(-0.0), bits(read.left));
+        assertEquals(Double.doubleToRawLongBits(0.0), bits(right.left));
+        assertEquals(Double.doubleToRawLongBits(-0.0), bits(right.right));
+    }
+
+    @Test
+    public void truncatedFilesAreRejected() throws IOException {
+        byte[] file = write(new RandomTrees(31).valid(5));
+        for (int length = 0; length < file.length; length++) {
+            assertRejected(Arrays.copyOf(file, length));
+        }
+    }
+
+    @Test
+    public void damagedFilesAreRejected() throws IOException {
+        byte[] file = write(new PrattParser(new Scanner("1 + \"a\" * -2").scanTokens()).parse());
+
+        byte[] magic = file.clone();
+        magic[0] = 'J';
+        assertRejected(magic);
+
+        byte[] version = file.clone();
+        version[4] = (byte)(AstFile.VERSION + 1);
+        assertRejected(version);
+
+        assertRejected(Arrays.copyOf(file, file.length + 1));
+
+        // A constant count of -1, a constant index of -1, and a varint too big for an int
+        assertRejected(new byte[] {'L', 'O', 'X', 'C', 1, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x0F});
+        assertRejected(new byte[] {'L', 'O', 'X', 'C', 1, 0, 3, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x0F});
+        assertRejected(new byte[] {'L', 'O', 'X', 'C', 1, 0, 3, (byte)0x80, (byte)0x80, (byte)0x80, (byte)0x80, 0x10});
+        // A constant index past the end of the pool, and tags that don't exist
+        assertRejected(new byte[] {'L', 'O', 'X', 'C', 1, 0, 3, 0});
+        assertRejected(new byte[] {'L', 'O', 'X', 'C', 1, 0, 100});
+        assertRejected(new byte[] {'L', 'O', 'X', 'C', 1, 1, 7});
+    }
+
+    private static void assertRejected(byte[] file) {
+        try {
+            AstFile.read(ByteBuffer.wrap(file));
+            fail("Loaded " + Arrays.toString(file));
+        } catch (AstFile.FormatException expected) {
+            // What every damaged file should do
+        } catch (IOException error) {
+            throw new AssertionError(error);
+        }
+        try {
+            AstFile.read(new Trickle(file));
+            fail("Streamed " + Arrays.toString(file));
+        } catch (AstFile.FormatException expected) {
+            // Same for a stream
+        } catch (IOException error) {
+            throw new AssertionError(error);
+        }
+    }
+
+    private static byte[] write(Expression tree) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AstFile.write(tree, out);
+        return out.toByteArray();
+    }
+
+    private static Token token(TokenType type, int line) {
+        return new Token(type, Scanner.lexeme(type), null, line);
+    }
+
+    private static long bits(Expression literal) {
+        return Double.doubleToRawLongBits((Double)((Expression.Literal)literal).value);
+    }
+
+    // The tree with every operator's line and every literal's type
+    private static String describe(Expression expression) {
+        switch (expression.kind) {
+            case Expression.BINARY:
+                Expression.Binary binary = (Expression.Binary)expression;
+                return "(" + binary.operator.lexeme + "@" + binary.operator.line + " "
+                        + describe(binary.left) + " " + describe(binary.right) + ")";
+            case Expression.GROUPING:
+                return "(group " + describe(((Expression.Grouping)expression).expression) + ")";
+            case Expression.UNARY:
+                Expression.Unary unary = (Expression.Unary)expression;
+                return "(" + unary.operator.lexeme + "@" + unary.operator.line + " " + describe(unary.right) + ")";
+            default:
+                Object value = ((Expression.Literal)expression).value;
+                return value == null ? "nil" : value.getClass().getSimpleName() + ":" + value;
+        }
+    }
+
+    // A stream that hands out one byte per read, so the reader has to refill its buffer all the time
+    private static final class Trickle extends InputStream {
+        private final byte[] bytes;
+        private int position = 0;
+
+        Trickle(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() {
+            return position < bytes.length ? bytes[position++] & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] into, int offset, int length) {
+            if (position == bytes.length) {
+                return -1;
+            }
+            into[offset] = bytes[position++];
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package lox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+// Checks IncrementalParser against scanning and parsing the whole buffer again after every edit
+public class IncrementalParserTest {
+    // Pieces random sources and edits are made of, chosen to join and split tokens, open and close strings
+    // and comments, add and remove lines, and make both scanning and syntax errors
+    private static final String[] PIECES = {
+            "1", "23", "4.5", ".", "0", " ", " ", "\n", "+", "-", "*", "/", "!", "=", "==", "<", ">=",
+            "(", ")", "\"", "\"ab\"", "\"x\ny\"", "// c\n", "true", "nil", "x", "@"
+    };
+
+    @Test(timeout = 10000)
+    public void editAfterShrinkingTheTokensOfACallDoesNotHang() {
+        ErrorReporter reporter = reporter();
+        IncrementalParser parser = new IncrementalParser(" !!nil=x", reporter);
+        parser.edit(0, 3, "12");
+        parser.edit(7, 0, "y");
+        assertMatchesFullParse(parser);
+    }
+
+    @Test(timeout = 120000)
+    public void randomEditsMatchAFullParse() {
+        Random random = new Random(21);
+        for (int buffer = 0; buffer < 600; buffer++) {
+            IncrementalParser parser = new IncrementalParser(text(random, random.nextInt(40)), reporter());
+            for (int edit = 0; edit < 100; edit++) {
+                String source = parser.source();
+                int offset = random.nextInt(source.length() + 1);
+                int removed = random.nextInt(Math.min(6, source.length() - offset) + 1);
+                parser.edit(offset, removed, text(random, random.nextInt(3)));
+                assertMatchesFullParse(parser);
+            }
+        }
+    }
+
+    @Test
+    public void treeIsNullAfterAnErrorTheParserRecoveredFrom() {
+        IncrementalParser parser = new IncrementalParser("1 + 2 @", reporter());
+        assertNull(parser.tree());
+        assertEquals("(+ 1.0 2.0)", new ASTPrinter().print(parser.edit(6, 1, "")));
+        assertNull(parser.edit(0, 0, "@ "));
+    }
+
+    private static void assertMatchesFullParse(IncrementalParser parser) {
+        String source = parser.source();
+        ErrorReporter reporter = reporter();
+        TokenBuffer tokens = new Scanner(source, reporter).scanTokens();
+        Expression tree = new PrattParser(tokens, reporter).parse();
+
+        assertEquals(source, describe(tokens), describe(parser.tokens()));
+        // Any error at all means there's no tree, even where PrattParser recovered and returned one
+        assertEquals(source, reporter.hadError ? "null" : describe(tree), describe(parser.tree()));
+    }
+
+    private static String text(Random random, int pieces) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < pieces; i++) {
+            builder.append(PIECES[random.nextInt(PIECES.length)]);
+        }
+        return builder.toString();
+    }
+
+    private static ErrorReporter reporter() {
+        return new ErrorReporter(new PrintStream(new ByteArrayOutputStream()));
+    }
+
+    // Every token's type, position, length, line and literal
+    private static String describe(TokenBuffer tokens) {
+        StringBuilder builder = new StringBuilder();
+        for (int token = 0; token < tokens.size(); token++) {
+            builder.append(tokens.type(token)).append(' ').append(tokens.start(token)).append('+')
+                    .append(tokens.length(token)).append(" line ").append(tokens.line(token)).append(' ')
+                    .append(tokens.literal(token)).append('\n');
+        }
+        return builder.toString();
+    }
+
+    // The tree as ASTPrinter prints it, with the line of every operator
+    private static String describe(Expression expression) {
+        if (expression == null) {
+            return "null";
+        }
+        switch (expression.kind) {
+            case Expression.BINARY:
+                Expression.Binary binary = (Expression.Binary)expression;
+                return "(" + binary.operator.lexeme + "@" + binary.operator.line + " "
+                        + describe(binary.left) + " " + describe(binary.right) + ")";
+            case Expression.GROUPING:
+                return "(group " + describe(((Expression.Grouping)expression).expression) + ")";
+            case Expression.UNARY:
+                Expression.Unary unary = (Expression.Unary)expression;
+                return "(" + unary.operator.lexeme + "@" + unary.operator.line + " " + describe(unary.right) + ")";
+            default:
+                return new ASTPrinter().print(expression);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package lox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+// Checks that compiled expressions, and the Interpreter fallback for trees that can't be compiled, give the
+// same values and runtime errors as the Interpreter
+public class JvmCompilerTest {
+    private final Interpreter interpreter = new Interpreter();
+
+    @Test
+    public void randomTreesMatchTheInterpreter() {
+        RandomTrees trees = new RandomTrees(11);
+        int compiled = 0;
+        int fellBack = 0;
+        for (int i = 0; i < 3000; i++) {
+            Expression tree = trees.any(1 + i % 6);
+            if (JvmCompiler.tryCompile(tree) != null) {
+                compiled++;
+            } else {
+                fellBack++;
+            }
+            assertMatches(tree);
+        }
+        // Both paths have to have been tested, and mixed types make plenty of each
+        assertTrue("compiled " + compiled, compiled > 300);
+        assertTrue("fell back " + fellBack, fellBack > 300);
+    }
+
+    @Test
+    public void wellTypedTreesCompileAndMatchTheInterpreter() {
+        RandomTrees trees = new RandomTrees(111);
+        for (int i = 0; i < 3000; i++) {
+            Expression tree = trees.valid(1 + i % 7);
+            assertNotNull(new ASTPrinter().print(tree), JvmCompiler.tryCompile(tree));
+            assertMatches(tree);
+        }
+    }
+
+    @Test
+    public void treesTooLargeForOneMethodFallBack() {
+        RandomTrees trees = new RandomTrees(1111);
+        Expression tree = balancedSum(15);
+        assertNull(JvmCompiler.tryCompile(tree));
+        assertMatches(tree);
+
+        // A runtime error deep inside one still reports the Interpreter's line
+        Expression failing = new Expression.Binary(tree, new Token(TokenType.PLUS, "+", null, 99),
+                trees.bool(2));
+        assertNull(JvmCompiler.tryCompile(failing));
+        assertMatches(failing);
+    }
+
+    private void assertMatches(Expression tree) {
+        CompiledExpression compiled = JvmCompiler.compile(tree);
+        assertEquals(new ASTPrinter().print(tree), RandomTrees.outcome(() -> interpreter.evaluate(tree)),
+                RandomTrees.outcome(compiled::evaluate));
+    }
+
+    // 2^levels different numbers added up in a balanced tree, which takes more than the 64KB of bytecode one
+    // JVM method can hold, without recursing too deep for the stack
+    private static Expression balancedSum(int levels) {
+        Expression[] nodes = new Expression[1 << levels];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Expression.Literal((double)i);
+        }
+        for (int size = nodes.length; size > 1; size /= 2) {
+            for (int i = 0; i < size / 2; i++) {
+                nodes[i] = new Expression.Binary(nodes[2 * i], new Token(TokenType.PLUS, "+", null, 1), nodes[2 * i + 1]);
+            }
+        }
+        return nodes[0];
+    }
+}
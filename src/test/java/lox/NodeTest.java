@@ -0,0 +1,123 @@
+package lox;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+// Checks that self-specializing Node trees give the same values and runtime errors as the Interpreter,
+// both the first time they run and once they've rewritten themselves, and after they deoptimize
+public class NodeTest {
+    private final Interpreter interpreter = new Interpreter();
+
+    @Test
+    public void randomTreesMatchTheInterpreterEveryRun() {
+        RandomTrees trees = new RandomTrees(12);
+        for (int i = 0; i < 5000; i++) {
+            Expression tree = i % 2 == 0 ? trees.any(1 + i % 6) : trees.valid(1 + i % 6);
+            String expected = RandomTrees.outcome(() -> interpreter.evaluate(tree));
+            Node.Root root = Node.build(tree);
+            for (int run = 0; run < 3; run++) {
+                assertEquals(new ASTPrinter().print(tree) + " run " + run, expected, RandomTrees.outcome(root::evaluate));
+            }
+        }
+    }
+
+    @Test
+    public void addSpecializesForNumbersThenDeoptimizesForStrings() {
+        Token plus = new Token(TokenType.PLUS, "+", null, 7);
+        Changing left = new Changing(1.0, 2.0, "a", "b", 3.0, "c");
+        Changing right = new Changing(2.0, 3.0, "x", "y", "z", 4.0);
+        Node.Root root = new Node.Root(new Node.UninitializedBinary(plus, left, right));
+
+        // The first run only looks at the types, and the second runs as Add, which asks for unboxed doubles
+        assertEquals("Double 3", RandomTrees.outcome(root::evaluate));
+        assertFalse(left.askedForDouble);
+        assertEquals("Double 5", RandomTrees.outcome(root::evaluate));
+        assertTrue(left.askedForDouble);
+
+        // Strings make it deoptimize to the generic node, which finishes the run and never asks for a double
+        assertEquals("String ax", RandomTrees.outcome(root::evaluate));
+        left.askedForDouble = false;
+        assertEquals("String by", RandomTrees.outcome(root::evaluate));
+        assertFalse(left.askedForDouble);
+
+        // Mixed operands fail with the Interpreter's message on the operator's line
+        for (int run = 0; run < 2; run++) {
+            Object leftValue = left.peek();
+            Object rightValue = right.peek();
+            assertEquals(RandomTrees.outcome(() -> Interpreter.binary(plus, leftValue, rightValue)),
+                    RandomTrees.outcome(root::evaluate));
+        }
+        assertEquals("error \"Operands must be two numbers or two strings.\" on line 7",
+                RandomTrees.outcome(() -> Interpreter.binary(plus, 3.0, "z")));
+    }
+
+    @Test
+    public void everySpecializationMatchesTheInterpreterAfterDeoptimizing() {
+        TokenType[] types = {
+                TokenType.PLUS, TokenType.MINUS, TokenType.STAR, TokenType.SLASH, TokenType.GREATER,
+                TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL, TokenType.BANG_EQUAL,
+                TokenType.EQUAL_EQUAL
+        };
+        Object[][] sequences = {
+                {1.0, 2.0, "s", 3.0, true, null},
+                {"s", "t", 1.0, "u", false},
+                {true, 1.0, 2.0, "s"}
+        };
+        for (TokenType type : types) {
+            for (Object[] lefts : sequences) {
+                for (Object[] rights : sequences) {
+                    Token operator = new Token(type, Scanner.lexeme(type), null, 3);
+                    Changing left = new Changing(lefts);
+                    Changing right = new Changing(rights);
+                    Node.Root root = new Node.Root(new Node.UninitializedBinary(operator, left, right));
+                    for (int run = 0; run < 8; run++) {
+                        Object leftValue = left.peek();
+                        Object rightValue = right.peek();
+                        assertEquals(type + " " + leftValue + " " + rightValue,
+                                RandomTrees.outcome(() -> Rope.flatten(Interpreter.binary(operator, leftValue, rightValue))),
+                                RandomTrees.outcome(root::evaluate));
+                    }
+                }
+            }
+        }
+
+        Token minus = new Token(TokenType.MINUS, "-", null, 5);
+        Changing operand = new Changing(1.0, 2.0, "s", 3.0, true);
+        Node.Root root = new Node.Root(new Node.UninitializedUnary(minus, operand));
+        for (int run = 0; run < 6; run++) {
+            Object value = operand.peek();
+            assertEquals(RandomTrees.outcome(() -> Interpreter.unary(minus, value)), RandomTrees.outcome(root::evaluate));
+        }
+    }
+
+    // A leaf that gives the next of its values every time it runs, which no tree built from source can do,
+    // so its parent sees the types change. Remembers whether its parent asked for an unboxed double
+    private static final class Changing extends Node {
+        private final Object[] values;
+        private int next = 0;
+        boolean askedForDouble = false;
+
+        Changing(Object... values) {
+            this.values = values;
+        }
+
+        // The value the next run will give
+        Object peek() {
+            return values[next % values.length];
+        }
+
+        @Override
+        Object execute() {
+            return values[next++ % values.length];
+        }
+
+        @Override
+        double executeDouble() throws UnexpectedResult {
+            askedForDouble = true;
+            return super.executeDouble();
+        }
+    }
+}
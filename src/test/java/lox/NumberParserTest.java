@@ -0,0 +1,98 @@
+package lox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+// Checks NumberParser against Double.parseDouble, bit for bit
+public class NumberParserTest {
+    private static final String[] SHAPES = {"integer", "short", "long", "tiny", "huge"};
+
+    @Test
+    public void randomLiteralsMatchParseDouble() {
+        Random random = new Random(23);
+        for (int i = 0; i < 1_000_000; i++) {
+            check(literal(random, SHAPES[i % SHAPES.length]));
+        }
+    }
+
+    @Test
+    public void edgeCasesMatchParseDouble() {
+        String[] literals = {
+                "0", "0.0", "00012", "1.50000", "9007199254740992", "9007199254740993", "9007199254740991.5",
+                "9223372036854775807", "9223372036854775808", "18446744073709551615", "18446744073709551616",
+                "9999999999999999999", "17976931348623157" + zeros(292), "17976931348623159" + zeros(292),
+                "1" + zeros(309), "0." + zeros(307) + "22250738585072014", "0." + zeros(323) + "49",
+                "0." + zeros(323) + "5", "0." + zeros(400) + "1", "0.1", "0.2", "0.3", "123456789012345678.9"
+        };
+        for (String literal : literals) {
+            check(literal);
+        }
+    }
+
+    @Test
+    public void parsesOnlyTheGivenRange() {
+        String source = "1 + 23.5 * 4";
+        assertEquals(23.5, NumberParser.parse(source, 4, 8), 0);
+
+        ByteBuffer bytes = ByteBuffer.wrap("\"é\" + 0.125".getBytes(StandardCharsets.UTF_8));
+        Utf8Source utf8 = new Utf8Source(bytes);
+        assertEquals(0.125, NumberParser.parse(utf8, utf8.length() - 5, utf8.length()), 0);
+    }
+
+    private static void check(String literal) {
+        long expected = Double.doubleToRawLongBits(Double.parseDouble(literal));
+        long actual = Double.doubleToRawLongBits(NumberParser.parse(literal, 0, literal.length()));
+        assertEquals(literal + " was read as " + Double.longBitsToDouble(actual), expected, actual);
+    }
+
+    // integer: "12345", short: "3.25", long: 17 significant digits, tiny: "0.000...0123",
+    // huge: more digits than fit in a long
+    private static String literal(Random random, String shape) {
+        StringBuilder builder = new StringBuilder();
+        switch (shape) {
+            case "integer":
+                builder.append(random.nextInt(1_000_000));
+                break;
+            case "short":
+                builder.append(random.nextInt(1000)).append('.').append(random.nextInt(100));
+                break;
+            case "long":
+                int whole = 1 + random.nextInt(5);
+                digits(builder, random, whole);
+                builder.append('.');
+                digits(builder, random, 17 - whole);
+                break;
+            case "tiny":
+                builder.append("0.").append(zeros(random.nextInt(320)));
+                digits(builder, random, 1 + random.nextInt(19));
+                break;
+            case "huge":
+                digits(builder, random, 20 + random.nextInt(20));
+                builder.append('.');
+                digits(builder, random, 1 + random.nextInt(20));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown literal shape " + shape + ".");
+        }
+        return builder.toString();
+    }
+
+    private static void digits(StringBuilder builder, Random random, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append((char)('0' + random.nextInt(10)));
+        }
+    }
+
+    private static String zeros(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append('0');
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package lox;
+
+import java.util.Random;
+import java.util.function.Supplier;
+
+// Makes random expression trees for tests that check another evaluator against the Interpreter. Operators
+// are put on random lines, so a runtime error's line tells which node failed
+class RandomTrees {
+    private static final TokenType[] UNARY = {TokenType.MINUS, TokenType.BANG};
+    private static final TokenType[] BINARY = {
+            TokenType.PLUS, TokenType.MINUS, TokenType.STAR, TokenType.SLASH, TokenType.GREATER,
+            TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL, TokenType.BANG_EQUAL,
+            TokenType.EQUAL_EQUAL
+    };
+    private static final TokenType[] ARITHMETIC = {TokenType.PLUS, TokenType.MINUS, TokenType.STAR, TokenType.SLASH};
+    private static final TokenType[] COMPARISON = {
+            TokenType.GREATER, TokenType.GREATER_EQUAL, TokenType.LESS, TokenType.LESS_EQUAL
+    };
+    private static final TokenType[] EQUALITY = {TokenType.BANG_EQUAL, TokenType.EQUAL_EQUAL};
+    private static final Object[] LITERALS = {0.0, -0.0, 1.0, 2.5, 3.0, 1e300, "", "a", "bc", true, false, null};
+    private static final Object[] NUMBERS = {0.0, -0.0, 1.0, 2.5, 3.0, 1e300};
+    private static final Object[] STRINGS = {"", "a", "bc"};
+
+    private final Random random;
+    private int line = 1;
+
+    RandomTrees(long seed) {
+        random = new Random(seed);
+    }
+
+    // Any operator on operands of any type, so many of these fail at runtime
+    Expression any(int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            return literal(LITERALS);
+        }
+        switch (random.nextInt(6)) {
+            case 0: return new Expression.Grouping(any(depth - 1));
+            case 1: return new Expression.Unary(operator(UNARY), any(depth - 1));
+            default: return new Expression.Binary(any(depth - 1), operator(BINARY), any(depth - 1));
+        }
+    }
+
+    // A tree that evaluates to a number without a runtime error
+    Expression number(int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            return literal(NUMBERS);
+        }
+        switch (random.nextInt(4)) {
+            case 0: return new Expression.Grouping(number(depth - 1));
+            case 1: return new Expression.Unary(operator(TokenType.MINUS), number(depth - 1));
+            default: return new Expression.Binary(number(depth - 1), operator(ARITHMETIC), number(depth - 1));
+        }
+    }
+
+    // A tree that evaluates to a string without a runtime error
+    Expression string(int depth) {
+        if (depth == 0 || random.nextInt(3) == 0) {
+            return literal(STRINGS);
+        }
+        return new Expression.Binary(string(depth - 1), operator(TokenType.PLUS), string(depth - 1));
+    }
+
+    // A tree that evaluates to a boolean without a runtime error, comparing well-typed operands of every type
+    Expression bool(int depth) {
+        if (depth == 0) {
+            return new Expression.Literal(random.nextBoolean());
+        }
+        switch (random.nextInt(5)) {
+            case 0: return new Expression.Unary(operator(TokenType.BANG), valid(depth - 1));
+            case 1: return new Expression.Binary(number(depth - 1), operator(COMPARISON), number(depth - 1));
+            case 2: return new Expression.Binary(string(depth - 1), operator(EQUALITY), string(depth - 1));
+            case 3: return new Expression.Binary(bool(depth - 1), operator(EQUALITY), bool(depth - 1));
+            default: return new Expression.Binary(number(depth - 1), operator(EQUALITY), number(depth - 1));
+        }
+    }
+
+    // A tree that evaluates without a runtime error, of a random type
+    Expression valid(int depth) {
+        switch (random.nextInt(3)) {
+            case 0: return number(depth);
+            case 1: return string(depth);
+            default: return bool(depth);
+        }
+    }
+
+    // What evaluating something gave, as a string to compare: the value with its type, or the runtime error
+    // with its line
+    static String outcome(Supplier<Object> evaluation) {
+        try {
+            Object value = evaluation.get();
+            if (value == null) {
+                return "nil";
+            }
+            return value.getClass().getSimpleName() + " " + Interpreter.stringify(value);
+        } catch (RuntimeError error) {
+            return "error \"" + error.getMessage() + "\" on line " + error.token.line;
+        }
+    }
+
+    private Expression literal(Object[] values) {
+        return new Expression.Literal(values[random.nextInt(values.length)]);
+    }
+
+    private Token operator(TokenType[] types) {
+        return operator(types[random.nextInt(types.length)]);
+    }
+
+    private Token operator(TokenType type) {
+        line += random.nextInt(3);
+        return new Token(type, Scanner.lexeme(type), null, line);
+    }
+}
@@ -0,0 +1,59 @@
+package lox;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.function.Consumer;
+
+import org.junit.Test;
+
+// Checks that compiling to bytecode and running it on the VM gives the same values and runtime errors as the
+// Interpreter
+public class VMTest {
+    private final Interpreter interpreter = new Interpreter();
+    private final VM vm = new VM();
+
+    @Test
+    public void randomTreesMatchTheInterpreter() {
+        RandomTrees trees = new RandomTrees(2);
+        for (int i = 0; i < 5000; i++) {
+            Expression tree = i % 2 == 0 ? trees.any(1 + i % 7) : trees.valid(1 + i % 7);
+            assertMatches(tree);
+        }
+    }
+
+    @Test
+    public void oneVMRunsManyChunksInARow() {
+        // The VM reuses its stack, so a run that failed part way through must not leave anything behind
+        RandomTrees trees = new RandomTrees(22);
+        for (int i = 0; i < 500; i++) {
+            assertMatches(trees.any(8));
+            assertMatches(trees.valid(2));
+        }
+    }
+
+    @Test
+    public void printsLikeTheInterpreter() {
+        String[] sources = {"1 + 2", "-0", "0 / 0 == 0 / 0", "\"a\" + \"b\" == \"ab\"", "nil", "!nil", "1 +\n\n\"a\""};
+        for (String source : sources) {
+            Expression tree = new PrattParser(new Scanner(source).scanTokens()).parse();
+            assertEquals(source, printed(out -> new Interpreter(out, new ErrorReporter(out)).interpret(tree)),
+                    printed(out -> new VM(out, new ErrorReporter(out)).interpret(new Compiler().compile(tree))));
+        }
+    }
+
+    private void assertMatches(Expression tree) {
+        Chunk chunk = new Compiler().compile(tree);
+        assertEquals(new ASTPrinter().print(tree), RandomTrees.outcome(() -> interpreter.evaluate(tree)),
+                RandomTrees.outcome(() -> vm.run(chunk)));
+    }
+
+    private static String printed(Consumer<PrintStream> run) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(buffer);
+        run.accept(stream);
+        stream.flush();
+        return buffer.toString();
+    }
+}